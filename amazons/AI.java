@@ -1,8 +1,11 @@
 package amazons;
 
-import java.util.Iterator;
-
-import static amazons.Piece.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * A Player that automatically generates moves.
@@ -12,151 +15,416 @@ import static amazons.Piece.*;
 class AI extends Player {
 
     /**
-     * A position magnitude indicating a win (for white if positive, black
-     * if negative).
+     * Default size of the transposition table, in megabytes.
+     */
+    static final int DEFAULT_HASH_MEGABYTES = 32;
+    /**
+     * Default limits on thinking time per move and for all of one
+     * player's moves in a game, in seconds.  Two AIs on these defaults
+     * finish a game within a minute.
+     */
+    static final double DEFAULT_MOVE_SECONDS = 5, DEFAULT_GAME_SECONDS = 25;
+    /**
+     * Default number of search threads.
      */
-    private static final int WINNING_VALUE = Integer.MAX_VALUE - 1;
+    static final int DEFAULT_THREADS = 1;
     /**
-     * A magnitude greater than a normal value.
+     * The evaluation cache gets this fraction of the transposition
+     * table's size.
      */
-    private static final int INFTY = Integer.MAX_VALUE;
+    private static final int EVAL_CACHE_FRACTION = 4;
 
     /**
      * A new AI with no piece or controller (intended to produce
      * a template).
      */
     AI() {
-        this(null, null);
+        super(null, null);
+        _hashMegabytes = DEFAULT_HASH_MEGABYTES;
+        _moveMillis = (long) (DEFAULT_MOVE_SECONDS * 1000);
+        _gameMillis = (long) (DEFAULT_GAME_SECONDS * 1000);
+        _threads = DEFAULT_THREADS;
     }
 
     /**
-     * A new AI playing PIECE under control of CONTROLLER.
+     * A new AI playing PIECE under control of CONTROLLER, with the
+     * settings of TEMPLATE.
      */
-    AI(Piece piece, Controller controller) {
+    private AI(Piece piece, Controller controller, AI template) {
         super(piece, controller);
+        _hashMegabytes = template._hashMegabytes;
+        _moveMillis = template._moveMillis;
+        _gameMillis = template._gameMillis;
+        _threads = template._threads;
+        _youngBrothersWait = template._youngBrothersWait;
+        _pondering = template._pondering;
+        _tablebase = template._tablebase;
+        _book = template._book;
+        _clock = new TimeManager(_moveMillis, _gameMillis);
     }
 
     @Override
     Player create(Piece piece, Controller controller) {
-        return new AI(piece, controller);
+        return new AI(piece, controller, this);
+    }
+
+    /**
+     * Make AIs created from me use transposition tables of MEGABYTES
+     * megabytes.
+     */
+    void setHashSize(int megabytes) {
+        _hashMegabytes = megabytes;
+    }
+
+    /**
+     * Make AIs created from me think for at most MOVESECONDS seconds per
+     * move and GAMESECONDS seconds for all their moves in a game.
+     */
+    void setTimeLimits(double moveSeconds, double gameSeconds) {
+        _moveMillis = (long) (moveSeconds * 1000);
+        _gameMillis = (long) (gameSeconds * 1000);
+    }
+
+    /**
+     * Make AIs created from me search with THREADS threads.  With more
+     * than one, helper threads search the same position on their own
+     * boards, sharing only the transposition table (Lazy SMP).
+     */
+    void setThreads(int threads) {
+        _threads = Math.max(1, threads);
+    }
+
+    /**
+     * Make AIs created from me use Young Brothers Wait parallel search
+     * (see YbwSearcher) instead of Lazy SMP iff ON.
+     */
+    void setYoungBrothersWait(boolean on) {
+        _youngBrothersWait = on;
+    }
+
+    /**
+     * Make AIs created from me think on their opponents' time iff ON.
+     */
+    void setPondering(boolean on) {
+        _pondering = on;
+    }
+
+    /**
+     * Make AIs created from me look up small separated regions in TABLE
+     * instead of searching them, or not if TABLE is null.
+     */
+    void setTablebase(Tablebase table) {
+        _tablebase = table;
+    }
+
+    /**
+     * Make AIs created from me play moves from BOOK where it has any,
+     * or not if BOOK is null.
+     */
+    void setBook(OpeningBook book) {
+        _book = book;
+    }
+
+    @Override
+    SearchStats searchStats() {
+        return _stats;
+    }
+
+    @Override
+    void stopThinking() {
+        stopPondering();
+        if (_pool != null) {
+            _pool.shutdownNow();
+            _pool = null;
+        }
+        if (_ybw != null) {
+            _ybw.shutdown();
+            _ybw = null;
+        }
     }
 
     @Override
     String myMove() {
         Move move = findMove();
         _controller.reportMove(move);
+        if (_pondering) {
+            startPondering(move);
+        }
         return move.toString();
     }
 
     /**
-     * Return a move for me from the current position, assuming there
-     * is a move.
+     * Start searching, in the background, the position I expect after
+     * MOVE (from the current position) and my opponent's reply to it,
+     * which I predict from my transposition table.  Whatever the
+     * opponent plays, the search fills the shared table.  Does nothing
+     * if the game ends first, the queens are separated (so that the
+     * endgame solver usually moves at once), or there is no predicted
+     * reply.
      */
-    private Move findMove() {
+    private void startPondering(Move move) {
         Board b = new Board(board());
-        if (_myPiece == WHITE) {
-            findMove(b, maxDepth(b), true, 1, -INFTY, INFTY);
-        } else {
-            findMove(b, maxDepth(b), true, -1, -INFTY, INFTY);
+        b.makeMove(move);
+        if (b.winner() != null || _table == null || Endgame.separated(b)) {
+            return;
         }
-        return _lastFoundMove;
+        int reply = TranspositionTable.move(_table.probe(b.hash()));
+        if (reply == 0 || !b.isLegal(reply)) {
+            return;
+        }
+        b.makeMove(reply);
+        if (b.winner() != null) {
+            return;
+        }
+        _predicted = reply;
+        _clock.startPondering();
+        _main.setPosition(b, 1);
+        _ponderer = new Thread(_main, "amazons-ponder");
+        _ponderer.setDaemon(true);
+        _ponderer.start();
     }
 
     /**
-     * The move found by the last call to one of the ...FindMove methods
-     * below.
+     * Return the reply to my last move that my background search
+     * assumes, or 0 if I am not pondering.
      */
-    private Move _lastFoundMove;
+    int predictedReply() {
+        return _ponderer == null ? 0 : _predicted;
+    }
 
     /**
-     * Find a move from position BOARD and return its value, recording
-     * the move found in _lastFoundMove iff SAVEMOVE. The move
-     * should have maximal value or have value > BETA if SENSE==1,
-     * and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     * DEPTH levels.  Searching at level 0 simply returns a static estimate
-     * of the board value and does not set _lastMoveFound.
-     */
-    private int findMove(Board board, int depth,
-                         boolean saveMove, int sense, int alpha, int beta) {
-        if (depth == 0 || board.winner() != null) {
-            return staticScore(board);
-        }
-        Iterator<Move> legalmoves = board.legalMoves();
-        while (legalmoves.hasNext()) {
-            Move tempMove = legalmoves.next();
-            board.makeMove(tempMove);
-            if (sense == 1) {
-                int bestVal = findMove(board, depth - 1,
-                        false, -1, alpha, beta);
-                if (bestVal > alpha) {
-                    alpha = bestVal;
-                    if (saveMove) {
-                        _lastFoundMove = tempMove;
-                    }
-                }
-                board.undo();
-                if (beta <= alpha) {
+     * Stop any background search started by startPondering, and return
+     * the best move it found if it searched the current position, or 0
+     * otherwise.
+     */
+    int stopPondering() {
+        if (_ponderer == null) {
+            return 0;
+        }
+        _main.stop();
+        try {
+            _ponderer.join();
+        } catch (InterruptedException excp) {
+            throw new IllegalStateException(excp);
+        }
+        _ponderer = null;
+        if (board().lastMove() != _predicted) {
+            return 0;
+        }
+        return _main.bestMove();
+    }
+
+    /**
+     * Return a move for me from the current position, assuming there
+     * is a move.  Searches to increasing depths until my time manager
+     * says to stop, and returns the best move of the last search that
+     * finished.  Any helper threads search alongside until then, or
+     * all my threads share each search if I use Young Brothers Wait.
+     * If I pondered on the position, its best move stands until a
+     * search here finishes.  Positions in my opening book are played
+     * from it, and once the queens are separated, the endgame solver
+     * chooses if it can solve one of my regions; either way, at once.
+     */
+    private Move findMove() {
+        Board b = board();
+        int pondered = stopPondering();
+        _clock.startMove(b);
+        int booked = _book == null ? 0
+            : _book.move(b, ThreadLocalRandom.current());
+        _stats = new SearchStats();
+        if (booked != 0) {
+            Move best = Move.mv(booked);
+            _clock.endMove();
+            _lastFoundMove = best;
+            return best;
+        }
+        int solved = Endgame.separated(b) ? Endgame.bestMove(b, _tablebase)
+            : 0;
+        if (solved != 0) {
+            Move best = Move.mv(solved);
+            _clock.endMove();
+            _lastFoundMove = best;
+            return best;
+        }
+        if (_table == null) {
+            _table = new TranspositionTable(_hashMegabytes);
+            _main = new Searcher(_table, _clock);
+            _main.setSelective(true);
+            _evalCache = new EvalCache(Math.max(1, _hashMegabytes
+                                                / EVAL_CACHE_FRACTION));
+            _main.setTablebase(_tablebase);
+            _main.setEvalCache(_evalCache);
+            _helpers = new Searcher[_youngBrothersWait ? 0 : _threads - 1];
+            for (int i = 0; i < _helpers.length; i += 1) {
+                _helpers[i] = new Searcher(_table, _clock);
+                _helpers[i].setSelective(true);
+                _helpers[i].setTablebase(_tablebase);
+                _helpers[i].setEvalCache(_evalCache);
+            }
+        }
+        if (_ybw == null && _youngBrothersWait) {
+            _ybw = new YbwSearcher(new ForkJoinPool(_threads), _table,
+                                   _evalCache, _tablebase, _clock);
+        }
+        if (_pool == null && _helpers.length > 0) {
+            _pool = Executors.newFixedThreadPool(_helpers.length, r -> {
+                Thread t = new Thread(r, "amazons-search");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        int[] queenMoves = new int[Board.MAX_QUEEN_MOVES],
+            moves = new int[Board.MAX_SPEARS];
+        b.generateQueenMoves(b.turn(), queenMoves);
+        b.generateSpears(queenMoves[0], moves);
+        Move best = Move.mv(b.isLegal(pondered) ? pondered : moves[0]);
+
+        _main.setPosition(b, 1);
+        if (_ybw != null) {
+            _ybw.clearStats();
+        }
+        Future<?>[] running = new Future<?>[_helpers.length];
+        for (int i = 0; i < _helpers.length; i += 1) {
+            _helpers[i].setPosition(b, 1 + (i + 1) % 2);
+            running[i] = _pool.submit(_helpers[i]);
+        }
+        for (int depth = 1; depth <= Searcher.MAX_DEPTH; depth += 1) {
+            int value;
+            if (_ybw != null) {
+                value = _ybw.search(b, depth);
+                if (_ybw.aborted()) {
                     break;
                 }
+                best = Move.mv(_ybw.bestMove());
+                _stats.finishDepth(_clock.elapsedMillis(),
+                                   _ybw.stats().nodes());
             } else {
-                int bestVal = findMove(board, depth - 1,
-                        false, 1, alpha, beta);
-                if (bestVal < beta) {
-                    beta = bestVal;
-                    if (saveMove) {
-                        _lastFoundMove = tempMove;
-                    }
-                }
-                board.undo();
-                if (beta <= alpha) {
+                value = _main.search(depth);
+                if (_main.aborted()) {
                     break;
                 }
+                best = Move.mv(_main.bestMove());
+                _stats.finishDepth(_clock.elapsedMillis(), _main.nodes());
+            }
+            if (Math.abs(value) == Searcher.WINNING_VALUE
+                || _clock.softExpired()) {
+                break;
+            }
+        }
+        for (int i = 0; i < _helpers.length; i += 1) {
+            _helpers[i].stop();
+        }
+        for (Future<?> helper : running) {
+            try {
+                helper.get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalStateException(excp);
             }
         }
-        return staticScore(board);
+        _stats.add(_ybw != null ? _ybw.stats() : _main.stats());
+        for (Searcher helper : _helpers) {
+            _stats.add(helper.stats());
+        }
+        _stats.finish(_clock.elapsedMillis());
+        _clock.endMove();
+        _lastFoundMove = best;
+        return best;
     }
 
     /**
-     * Return a heuristically determined maximum search depth
-     * based on characteristics of BOARD.
+     * The move found by the last call to findMove.
      */
-    private int maxDepth(Board board) {
-        int N = board.numMoves();
-        return (int) Math.pow(N / 12 + 1, CRITICALVALUE);
-    }
+    private Move _lastFoundMove;
 
     /**
-     * An important integer.
-     * */
-    private static final double CRITICALVALUE = 1.5;
+     * Counts for the search for my last move (empty if I played it
+     * without searching).
+     */
+    private SearchStats _stats;
 
     /**
-     * Return a heuristic value for BOARD.
+     * Size of my transposition table, in megabytes.
      */
-    private int staticScore(Board board) {
-        Piece winner = board.winner();
-        if (winner == BLACK) {
-            return -WINNING_VALUE;
-        } else if (winner == WHITE) {
-            return WINNING_VALUE;
-        }
-        Iterator<Move> allMyMoves = board.legalMoves();
-        int myMoves = 0;
-        while (allMyMoves.hasNext()) {
-            myMoves += 1;
-            allMyMoves.next();
-        }
-        Iterator<Move> allOppMoves = board.legalMoves(board.turn().opponent());
-        int oppMoves = 0;
-        while (allOppMoves.hasNext()) {
-            oppMoves += 1;
-            allOppMoves.next();
-        }
-        if (board.turn() == WHITE) {
-            return myMoves - oppMoves;
-        } else {
-            return oppMoves - myMoves;
-        }
-    }
+    private int _hashMegabytes;
+
+    /**
+     * My limits on thinking time per move and per game, in
+     * milliseconds.
+     */
+    private long _moveMillis, _gameMillis;
+
+    /**
+     * Number of threads searching for my moves.
+     */
+    private int _threads;
+
+    /**
+     * True iff I search with Young Brothers Wait rather than Lazy SMP.
+     */
+    private boolean _youngBrothersWait;
+
+    /**
+     * True iff I search on my opponent's time.
+     */
+    private boolean _pondering;
+
+    /**
+     * Exact results for small separated regions, or null.
+     */
+    private Tablebase _tablebase;
+
+    /**
+     * Moves to play in the opening, or null.
+     */
+    private OpeningBook _book;
+
+    /**
+     * The thread searching on my opponent's time, or null.
+     */
+    private Thread _ponderer;
+
+    /**
+     * The packed reply that _ponderer assumes.
+     */
+    private int _predicted;
+
+    /**
+     * Decides when to stop searching (null in a template).
+     */
+    private TimeManager _clock;
+
+    /**
+     * Cached search results, created on my first move and kept for the
+     * rest of the game.  Shared by all my Searchers.
+     */
+    private TranspositionTable _table;
+
+    /**
+     * Cached static evaluations, created along with _table and shared
+     * the same way.
+     */
+    private EvalCache _evalCache;
+
+    /**
+     * The search run on the thread that calls myMove.
+     */
+    private Searcher _main;
+
+    /**
+     * Searches run by helper threads from _pool.
+     */
+    private Searcher[] _helpers;
+
+    /**
+     * My Young Brothers Wait search, or null if I use Lazy SMP or it has
+     * been shut down by stopThinking.
+     */
+    private YbwSearcher _ybw;
+
+    /**
+     * Threads for _helpers, or null if there are none or they have been
+     * released by stopThinking.
+     */
+    private ExecutorService _pool;
 
 }
@@ -1,8 +1,11 @@
 package amazons;
 
-import java.util.Collections;
-import java.util.Stack;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
 
 import static amazons.Piece.*;
 
@@ -18,6 +21,30 @@ class Board {
      */
     static final int SIZE = 10;
 
+    /**
+     * An upper bound on the number of legal moves in any position: each
+     * of four queens has at most 35 destinations, and from each of those
+     * at most 35 spear throws.
+     */
+    static final int MAX_MOVES = 4 * 35 * 35;
+
+    /**
+     * An upper bound on the number of queen moves (ignoring spear
+     * throws) for one side in any position.
+     */
+    static final int MAX_QUEEN_MOVES = 4 * 35;
+
+    /**
+     * An upper bound on the number of spear throws after any queen move.
+     */
+    static final int MAX_SPEARS = 35;
+
+    /**
+     * Seed for the Zobrist keys.  Changing it invalidates any stored
+     * table keyed by hash().
+     */
+    private static final long ZOBRIST_SEED = 0x9E3779B97F4A7C15L;
+
     /**
      * Initializes a game board with SIZE squares on a side in the
      * initial position.
@@ -37,22 +64,39 @@ class Board {
      * Copies MODEL into me.
      */
     void copy(Board model) {
-        init();
-        for (int i = 0; i < SIZE; i++) {
-            for (int j = 0; j < SIZE; j++) {
-                _model[i][j] = model._model[i][j];
-            }
+        if (_white == null) {
+            _white = new long[WORDS];
+            _black = new long[WORDS];
+            _spears = new long[WORDS];
+        }
+        for (int w = 0; w < WORDS; w++) {
+            _white[w] = model._white[w];
+            _black[w] = model._black[w];
+            _spears[w] = model._spears[w];
         }
         _turn = model._turn;
         _winner = model._winner;
-        _moves = model._moves;
+        _whiteLiberties = model._whiteLiberties;
+        _blackLiberties = model._blackLiberties;
+        _hash = model._hash;
+        if (_history == null || _history.length < model._numMoves) {
+            _history = Arrays.copyOf(model._history, model._history.length);
+        } else {
+            System.arraycopy(model._history, 0, _history, 0,
+                             model._numMoves);
+        }
+        _numMoves = model._numMoves;
     }
 
     /**
      * Clears the board to the initial position.
      */
     void init() {
-        _model = new Piece[SIZE][SIZE];
+        _white = new long[WORDS];
+        _black = new long[WORDS];
+        _spears = new long[WORDS];
+        _hash = 0;
+        _whiteLiberties = _blackLiberties = 0;
         for (int i = 0; i < SIZE; i++) {
             for (int j = 0; j < SIZE; j++) {
                 setElem(i * SIZE + j, i, j);
@@ -60,7 +104,8 @@ class Board {
         }
         _turn = WHITE;
         _winner = EMPTY;
-        _moves = new Stack<>();
+        _history = new int[INITIAL_HISTORY];
+        _numMoves = 0;
     }
 
     /**
@@ -73,12 +118,12 @@ class Board {
     void setElem(int index, int row, int col) {
         if (index == 3 * 10 || index == 3 || index == 6
                 || index == 3 * 10 + 9) {
-            _model[row][col] = WHITE;
+            put(WHITE, col, row);
         } else if (index == 6 * 10 || index == 9 * 10 + 3
                 || index == 9 * 10 + 6 || index == 6 * 10 + 9) {
-            _model[row][col] = BLACK;
+            put(BLACK, col, row);
         } else {
-            _model[row][col] = EMPTY;
+            put(EMPTY, col, row);
         }
     }
 
@@ -94,7 +139,15 @@ class Board {
      * board.
      */
     int numMoves() {
-        return _moves.size();
+        return _numMoves;
+    }
+
+    /**
+     * Return the packed last move (that has not been undone), or 0 if
+     * there is none.
+     */
+    int lastMove() {
+        return _numMoves == 0 ? 0 : _history[_numMoves - 1];
     }
 
     /**
@@ -108,6 +161,16 @@ class Board {
         return _winner;
     }
 
+    /**
+     * Return the Zobrist key of the current position: the XOR of a
+     * fixed random key for each occupied square and its contents, and
+     * of a further key if BLACK is to move.  Equal positions have equal
+     * keys, in every run of the program.
+     */
+    long hash() {
+        return _hash;
+    }
+
     /**
      * Return the contents the square at S.
      */
@@ -125,7 +188,31 @@ class Board {
      * 0 <= COL, ROW <= 9.
      */
     final Piece get(int col, int row) {
-        return _model[row][col];
+        return get(row * SIZE + col);
+    }
+
+    /**
+     * Return the contents of the square with index INDEX.
+     */
+    final Piece get(int index) {
+        int w = index >>> 6;
+        long b = 1L << index;
+        if ((_white[w] & b) != 0) {
+            return WHITE;
+        } else if ((_black[w] & b) != 0) {
+            return BLACK;
+        } else if ((_spears[w] & b) != 0) {
+            return SPEAR;
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Return true iff the square with index INDEX is empty.
+     */
+    final boolean isEmpty(int index) {
+        int w = index >>> 6;
+        return ((_white[w] | _black[w] | _spears[w]) & (1L << index)) == 0;
     }
 
     /**
@@ -146,7 +233,29 @@ class Board {
      * Set square (COL, ROW) to P.
      */
     final void put(Piece p, int col, int row) {
-        _model[row][col] = p;
+        int index = row * SIZE + col;
+        int w = index >>> 6;
+        long b = 1L << index;
+        long r0 = around(index, 0), r1 = around(index, 1);
+        _hash ^= zobrist(get(index), index) ^ zobrist(p, index);
+        countLiberties(r0, r1, -1);
+        _white[w] &= ~b;
+        _black[w] &= ~b;
+        _spears[w] &= ~b;
+        switch (p) {
+        case WHITE:
+            _white[w] |= b;
+            break;
+        case BLACK:
+            _black[w] |= b;
+            break;
+        case SPEAR:
+            _spears[w] |= b;
+            break;
+        default:
+            break;
+        }
+        countLiberties(r0, r1, 1);
         _winner = EMPTY;
     }
 
@@ -165,24 +274,29 @@ class Board {
      * empty. ASEMPTY may be null, in which case it has no effect.
      */
     boolean isUnblockedMove(Square from, Square to, Square asEmpty) {
-        if (!from.isQueenMove(to) || from == null || to ==  null) {
+        if (from == null || to == null || !from.isQueenMove(to)) {
             return false;
         }
-        int dir = from.direction(to);
-        while (from != to) {
-            from = from.queenMove(dir, 1);
-            if (_model[from.row()][from.col()] != EMPTY && from != asEmpty) {
-                return false;
+        long occ0 = _white[0] | _black[0] | _spears[0],
+            occ1 = _white[1] | _black[1] | _spears[1];
+        if (asEmpty != null) {
+            if (asEmpty.index() < 64) {
+                occ0 &= ~(1L << asEmpty.index());
+            } else {
+                occ1 &= ~(1L << asEmpty.index());
             }
         }
-        return true;
+        int f = from.index(), t = to.index();
+        return (Square.between(f, t, 0) & occ0) == 0
+            && (Square.between(f, t, 1) & occ1) == 0
+            && !occupied(occ0, occ1, t);
     }
 
     /**
      * Return true iff FROM is a valid starting square for a move.
      */
     boolean isLegal(Square from) {
-        return _model[from.row()][from.col()] == turn();
+        return get(from.index()) == turn();
     }
 
     /**
@@ -210,58 +324,290 @@ class Board {
         return isLegal(move.from(), move.to(), move.spear());
     }
 
+    /**
+     * Return true iff the packed move MOVE (see Move.pack) is a legal
+     * move in the current position.
+     */
+    boolean isLegal(int move) {
+        return isLegal(Square.sq(Move.from(move)), Square.sq(Move.to(move)),
+                       Square.sq(Move.spear(move)));
+    }
+
     /**
      * Move FROM-TO(SPEAR), assuming this is a legal move.
      */
     void makeMove(Square from, Square to, Square spear) {
-        if (_turn == WHITE) {
-            _model[to.row()][to.col()] = WHITE;
-        } else {
-            _model[to.row()][to.col()] = BLACK;
-        }
-        _model[from.row()][from.col()] = EMPTY;
-        _model[spear.row()][spear.col()] = SPEAR;
-        _moves.push(Move.mv(from, to, spear));
-        checkWinner();
-        _turn = _turn.opponent();
-        if (winner() == null) {
-            checkWinner();
-        }
+        makeMove(Move.pack(from.index(), to.index(), spear.index()));
     }
 
     /**
      * Helper method that checks is someone has won the game.
      */
     public void checkWinner() {
-        Iterator<Move> temp = legalMoves();
-        if (!temp.hasNext()) {
+        if (!hasMoves(_turn)) {
             _winner = _turn.opponent();
         }
     }
 
+    /**
+     * Return true iff SIDE (WHITE or BLACK) has a legal move, regardless
+     * of whose turn it is.  A side can move iff one of its queens has an
+     * empty neighbor, since it may step there and throw its spear back.
+     */
+    boolean hasMoves(Piece side) {
+        return (side == WHITE ? _whiteLiberties : _blackLiberties) > 0;
+    }
+
     /**
      * Move according to MOVE, assuming it is a legal move.
      */
     void makeMove(Move move) {
-        makeMove(move.from(), move.to(), move.spear());
+        makeMove(move.packed());
+    }
+
+    /**
+     * Move according to the packed move MOVE (see Move.pack), assuming
+     * it is a legal move.
+     */
+    void makeMove(int move) {
+        if (_numMoves == _history.length) {
+            _history = Arrays.copyOf(_history, 2 * _history.length);
+        }
+        _history[_numMoves] = move;
+        _numMoves += 1;
+        apply(_turn, move);
+        checkWinner();
+        _turn = _turn.opponent();
+        if (winner() == null) {
+            checkWinner();
+        }
     }
 
     /**
      * Undo one move.  H as no effect on the initial board.
      */
     void undo() {
-        Move last = _moves.pop();
-        Square from = last.from();
-        Square to = last.to();
-        Square spear = last.spear();
+        if (_numMoves == 0) {
+            return;
+        }
+        _numMoves -= 1;
         _turn = _turn.opponent();
-        if (_turn == WHITE) {
-            _model[from.row()][from.col()] = WHITE;
-        } else {
-            _model[from.row()][from.col()] = BLACK;
+        apply(_turn, _history[_numMoves]);
+        _winner = EMPTY;
+    }
+
+    /**
+     * Make packed move MOVE for SIDE if SIDE's queen is at its starting
+     * square, or take it back if the queen is at its destination (these
+     * are the same operation), maintaining the liberty counts and hash.
+     */
+    private void apply(Piece side, int move) {
+        int from = Move.from(move), to = Move.to(move),
+            spear = Move.spear(move);
+        long r0 = around(from, 0) | around(to, 0) | around(spear, 0),
+            r1 = around(from, 1) | around(to, 1) | around(spear, 1);
+        long[] queens = queens(side);
+        countLiberties(r0, r1, -1);
+        flip(queens, from);
+        flip(queens, to);
+        flip(_spears, spear);
+        countLiberties(r0, r1, 1);
+        _hash ^= zobrist(side, from) ^ zobrist(side, to)
+            ^ zobrist(SPEAR, spear) ^ BLACK_TO_MOVE;
+    }
+
+    /**
+     * Move the queen of the side to move according to the half-move
+     * MOVE (see generateQueenMoves), leaving the turn, move history, and
+     * spears unchanged.  The board is in an intermediate state until
+     * the matching undoHalfMove.
+     */
+    void makeHalfMove(int move) {
+        moveQueen(_turn, Move.from(move), Move.to(move));
+    }
+
+    /**
+     * Undo makeHalfMove(MOVE).
+     */
+    void undoHalfMove(int move) {
+        moveQueen(_turn, Move.from(move), Move.to(move));
+    }
+
+    /**
+     * Move SIDE's queen between the squares with indices FROM and TO, in
+     * whichever direction it is now, maintaining the liberty counts and
+     * hash.
+     */
+    private void moveQueen(Piece side, int from, int to) {
+        long r0 = around(from, 0) | around(to, 0),
+            r1 = around(from, 1) | around(to, 1);
+        long[] queens = queens(side);
+        countLiberties(r0, r1, -1);
+        flip(queens, from);
+        flip(queens, to);
+        countLiberties(r0, r1, 1);
+        _hash ^= zobrist(side, from) ^ zobrist(side, to);
+    }
+
+    /**
+     * Return the Zobrist key for piece P on the square with index INDEX
+     * (0 if P is EMPTY).
+     */
+    private static long zobrist(Piece p, int index) {
+        return p == EMPTY ? 0 : ZOBRIST[(p.ordinal() - 1) * SIZE * SIZE
+                                        + index];
+    }
+
+    /**
+     * Return word W of the set containing the square with index K and
+     * its (up to eight) neighbors.
+     */
+    private static long around(int k, int w) {
+        return NEIGHBORS[2 * k + w] | (w == k >>> 6 ? 1L << k : 0);
+    }
+
+    /**
+     * Add SIGN times the number of empty neighbors of each queen in the
+     * set whose words are R0 and R1 to the liberty count of its side.
+     * The liberties of a queen can change only when it or one of its
+     * neighbors changes, so bracketing a change with calls on the set of
+     * changed squares and their neighbors keeps the counts current.
+     */
+    private void countLiberties(long r0, long r1, int sign) {
+        long e0 = ~(_white[0] | _black[0] | _spears[0]),
+            e1 = ~(_white[1] | _black[1] | _spears[1]);
+        _whiteLiberties +=
+            sign * (liberties(_white[0] & r0, 0, e0, e1)
+                    + liberties(_white[1] & r1, 64, e0, e1));
+        _blackLiberties +=
+            sign * (liberties(_black[0] & r0, 0, e0, e1)
+                    + liberties(_black[1] & r1, 64, e0, e1));
+    }
+
+    /**
+     * Return the total number of empty neighbors of the queens in
+     * QUEENS, a word of a square set whose bit 0 is square BASE, given
+     * the words E0 and E1 of the set of empty squares.
+     */
+    private static int liberties(long queens, int base, long e0, long e1) {
+        int n = 0;
+        for (; queens != 0; queens &= queens - 1) {
+            int q = base + Long.numberOfTrailingZeros(queens);
+            n += Long.bitCount(NEIGHBORS[2 * q] & e0)
+                + Long.bitCount(NEIGHBORS[2 * q + 1] & e1);
         }
-        _model[to.row()][to.col()] = EMPTY;
-        _model[spear.row()][spear.col()] = EMPTY;
+        return n;
+    }
+
+    /**
+     * Return word W (0 or 1) of the set of squares holding SIDE's
+     * queens, with square index I in bit I % 64 of word I / 64.
+     */
+    long queenBits(Piece side, int w) {
+        return queens(side)[w];
+    }
+
+    /**
+     * Return word W (0 or 1) of the set of empty squares, as for
+     * queenBits.
+     */
+    long emptyBits(int w) {
+        long occ = _white[w] | _black[w] | _spears[w];
+        return ~occ & (w == 0 ? -1L : (1L << (SIZE * SIZE - 64)) - 1);
+    }
+
+    /**
+     * Return true iff none of my regions (see regions) holds queens of
+     * both sides.  This does the same flood fill, from each group of
+     * white queens in turn, but stops as soon as a group is seen to
+     * share empty squares with a black queen, and builds nothing, so it
+     * is cheap enough to test at every leaf of a search.
+     */
+    boolean separated() {
+        long e0 = emptyBits(0), e1 = emptyBits(1);
+        long p0 = e0 | _white[0] | _black[0], p1 = e1 | _white[1] | _black[1];
+        long w0 = _white[0], w1 = _white[1];
+        while ((w0 | w1) != 0) {
+            long f0 = w0 & -w0, f1 = f0 == 0 ? w1 & -w1 : 0;
+            long r0 = f0, r1 = f1;
+            while ((f0 | f1) != 0) {
+                int k = f0 != 0 ? Long.numberOfTrailingZeros(f0)
+                    : 64 + Long.numberOfTrailingZeros(f1);
+                if (k < 64) {
+                    f0 &= ~(1L << k);
+                } else {
+                    f1 &= ~(1L << k);
+                }
+                long add0 = NEIGHBORS[2 * k] & p0 & ~r0,
+                    add1 = NEIGHBORS[2 * k + 1] & p1 & ~r1;
+                r0 |= add0;
+                r1 |= add1;
+                f0 |= add0;
+                f1 |= add1;
+                if (((r0 & e0) | (r1 & e1)) != 0
+                    && ((r0 & _black[0]) | (r1 & _black[1])) != 0) {
+                    return false;
+                }
+            }
+            w0 &= ~r0;
+            w1 &= ~r1;
+        }
+        return true;
+    }
+
+    /**
+     * Return my regions: the sets of empty squares connected by king
+     * moves, where squares next to the same queen count as connected,
+     * and so do squares next to queens that are next to each other
+     * (either queen may move away and open a path for the other).
+     * Every empty square is in exactly one region.
+     */
+    List<Region> regions() {
+        List<Region> result = new ArrayList<>();
+        long e0 = emptyBits(0), e1 = emptyBits(1);
+        long q0 = _white[0] | _black[0], q1 = _white[1] | _black[1];
+        while ((e0 | e1) != 0) {
+            long f0 = e0 & -e0, f1 = f0 == 0 ? e1 & -e1 : 0;
+            long r0 = f0, r1 = f1, rq0 = 0, rq1 = 0;
+            while ((f0 | f1) != 0) {
+                int k = f0 != 0 ? Long.numberOfTrailingZeros(f0)
+                    : 64 + Long.numberOfTrailingZeros(f1);
+                if (k < 64) {
+                    f0 &= ~(1L << k);
+                } else {
+                    f1 &= ~(1L << k);
+                }
+                long n0 = NEIGHBORS[2 * k], n1 = NEIGHBORS[2 * k + 1];
+                long add0 = n0 & e0 & ~r0, add1 = n1 & e1 & ~r1;
+                long addQ0 = n0 & q0 & ~rq0, addQ1 = n1 & q1 & ~rq1;
+                r0 |= add0;
+                r1 |= add1;
+                rq0 |= addQ0;
+                rq1 |= addQ1;
+                f0 |= add0 | addQ0;
+                f1 |= add1 | addQ1;
+            }
+            e0 &= ~r0;
+            e1 &= ~r1;
+            result.add(new Region(r0, r1, rq0 & _white[0], rq1 & _white[1],
+                                  rq0 & _black[0], rq1 & _black[1]));
+        }
+        return result;
+    }
+
+    /**
+     * Return the occupancy set of SIDE's queens (WHITE or BLACK).
+     */
+    private long[] queens(Piece side) {
+        return side == WHITE ? _white : _black;
+    }
+
+    /**
+     * Toggle the bit for the square with index INDEX in the 100-bit
+     * set BITS.
+     */
+    private static void flip(long[] bits, int index) {
+        bits[index >>> 6] ^= 1L << index;
     }
 
     /**
@@ -376,95 +722,191 @@ class Board {
          * All legal moves for SIDE (WHITE or BLACK).
          */
         LegalMoveIterator(Piece side) {
-            _startingSquares = Square.iterator();
-            _spearThrows = NO_SQUARES;
-            _pieceMoves = NO_SQUARES;
-            _fromPiece = side;
-            toNext();
+            _buffer = new int[MAX_MOVES];
+            _count = generateMoves(side, _buffer);
+            _next = 0;
         }
 
         @Override
         public boolean hasNext() {
-            return _startingSquares.hasNext();
+            return _next < _count;
         }
 
         @Override
         public Move next() {
-            Move temp = _move;
-            toNext();
-            return temp;
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            _next += 1;
+            return Move.mv(_buffer[_next - 1]);
         }
 
         /**
-         * Advance so that the next valid Move is
-         * _start-_nextSquare(sp), where sp is the next value of
-         * _spearThrows.
+         * The packed moves, in _buffer[0 .. _count-1].
          */
-        private void toNext() {
-            if (!hasNext()) {
-                return;
+        private final int[] _buffer;
+        /**
+         * The number of moves generated.
+         */
+        private final int _count;
+        /**
+         * Index of the next move to return.
+         */
+        private int _next;
+    }
+
+    /**
+     * Store the packed forms (see Move.pack) of all legal moves for SIDE
+     * in OUT[0 .. N-1], returning N.  OUT must have room for at least
+     * MAX_MOVES entries.  Allocates nothing.
+     */
+    int generateMoves(Piece side, int[] out) {
+        long[] queens = queens(side);
+        int n = 0;
+        for (int w = 0; w < WORDS; w += 1) {
+            for (long q = queens[w]; q != 0; q &= q - 1) {
+                int from = (w << 6) + Long.numberOfTrailingZeros(q);
+                long occ0 = _white[0] | _black[0] | _spears[0],
+                    occ1 = _white[1] | _black[1] | _spears[1];
+                if (from < 64) {
+                    occ0 &= ~(1L << from);
+                } else {
+                    occ1 &= ~(1L << from);
+                }
+                for (int dir = 0; dir < 8; dir += 1) {
+                    for (int to : Square.ray(from, dir)) {
+                        if (occupied(occ0, occ1, to)) {
+                            break;
+                        }
+                        n = addSpears(from, to, occ0, occ1, out, n);
+                    }
+                }
             }
-            if (!_spearThrows.hasNext() && !_pieceMoves.hasNext()) {
-                _start = _startingSquares.next();
-                while (_model[_start.row()][_start.col()] != _fromPiece) {
-                    if (!hasNext()) {
-                        return;
+        }
+        return n;
+    }
+
+    /**
+     * Store the half-moves of SIDE (queen moves without spear throws) in
+     * OUT[0 .. N-1], returning N.  Half-moves are packed as by Move.pack
+     * with a spear field of 0.  OUT must have room for at least
+     * MAX_QUEEN_MOVES entries.  Allocates nothing.
+     */
+    int generateQueenMoves(Piece side, int[] out) {
+        long[] queens = queens(side);
+        long occ0 = _white[0] | _black[0] | _spears[0],
+            occ1 = _white[1] | _black[1] | _spears[1];
+        int n = 0;
+        for (int w = 0; w < WORDS; w += 1) {
+            for (long q = queens[w]; q != 0; q &= q - 1) {
+                int from = (w << 6) + Long.numberOfTrailingZeros(q);
+                for (int dir = 0; dir < 8; dir += 1) {
+                    for (int to : Square.ray(from, dir)) {
+                        if (occupied(occ0, occ1, to)) {
+                            break;
+                        }
+                        out[n] = Move.pack(from, to, 0);
+                        n += 1;
                     }
-                    _start = _startingSquares.next();
                 }
-                _pieceMoves = reachableFrom(_start, null);
-                _nextSquare = _pieceMoves.next();
-                _spearThrows = reachableFrom(_nextSquare, _start);
-            } else if (!_spearThrows.hasNext()) {
-                _nextSquare = _pieceMoves.next();
-                _spearThrows = reachableFrom(_nextSquare, _start);
-            } else if (!_pieceMoves.hasNext() && !_spearThrows.hasNext()) {
-                _start = _startingSquares.next();
-                while (_model[_start.row()][_start.col()] != _fromPiece) {
-                    if (!hasNext()) {
-                        return;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Store the complete packed moves FROM-TO(S) for each spear throw S
+     * that may follow the half-move MOVE = FROM-TO in OUT[0 .. N-1],
+     * returning N.  Gives the same result whether or not MOVE has been
+     * made with makeHalfMove.  OUT must have room for at least
+     * MAX_SPEARS entries.  Allocates nothing.
+     */
+    int generateSpears(int move, int[] out) {
+        int from = Move.from(move);
+        long occ0 = _white[0] | _black[0] | _spears[0],
+            occ1 = _white[1] | _black[1] | _spears[1];
+        if (from < 64) {
+            occ0 &= ~(1L << from);
+        } else {
+            occ1 &= ~(1L << from);
+        }
+        return addSpears(from, Move.to(move), occ0, occ1, out, 0);
+    }
+
+    /**
+     * Return the number of legal moves for SIDE, as generateMoves would
+     * produce, without generating them: for each queen and each square
+     * it can move to, add the number of squares reachable from there.
+     */
+    int countMoves(Piece side) {
+        long[] queens = queens(side);
+        int n = 0;
+        for (int w = 0; w < WORDS; w += 1) {
+            for (long q = queens[w]; q != 0; q &= q - 1) {
+                int from = (w << 6) + Long.numberOfTrailingZeros(q);
+                long occ0 = _white[0] | _black[0] | _spears[0],
+                    occ1 = _white[1] | _black[1] | _spears[1];
+                if (from < 64) {
+                    occ0 &= ~(1L << from);
+                } else {
+                    occ1 &= ~(1L << from);
+                }
+                for (int dir = 0; dir < 8; dir += 1) {
+                    for (int to : Square.ray(from, dir)) {
+                        if (occupied(occ0, occ1, to)) {
+                            break;
+                        }
+                        n += reachCount(to, occ0, occ1);
                     }
-                    _start = _startingSquares.next();
                 }
-                _pieceMoves = reachableFrom(_start, null);
-                _nextSquare = _pieceMoves.next();
-                _spearThrows = reachableFrom(_nextSquare, _start);
             }
-            Square temp = _spearThrows.next();
-            _move = Move.mv(_start, _nextSquare, temp);
-            if (!isUnblockedMove(_start, _nextSquare, temp)) {
-                toNext();
+        }
+        return n;
+    }
+
+    /**
+     * Return the number of squares reachable by a queen move from the
+     * square with index FROM, where OCC0 and OCC1 are the words of the
+     * set of occupied squares.
+     */
+    private static int reachCount(int from, long occ0, long occ1) {
+        int n = 0;
+        for (int dir = 0; dir < 8; dir += 1) {
+            for (int to : Square.ray(from, dir)) {
+                if (occupied(occ0, occ1, to)) {
+                    break;
+                }
+                n += 1;
             }
         }
+        return n;
+    }
 
-        /**
-         * Color of side whose moves we are iterating.
-         */
-        private Piece _fromPiece;
-        /**
-         * Current starting square.
-         */
-        private Square _start;
-        /**
-         * Remaining starting squares to consider.
-         */
-        private Iterator<Square> _startingSquares;
-        /**
-         * Current piece's new position.
-         */
-        private Square _nextSquare;
-        /**
-         * Remaining moves from _start to consider.
-         */
-        private Iterator<Square> _pieceMoves;
-        /**
-         * Remaining spear throws from _piece to consider.
-         */
-        private Iterator<Square> _spearThrows;
-        /**
-         * The next move to return.
-         * */
-        private Move _move;
+    /**
+     * Append to OUT, starting at OUT[N], the packed moves FROM-TO(S) for
+     * each square S reachable from TO, where OCC0 and OCC1 are the words
+     * of the set of occupied squares.  Return the new number of moves.
+     */
+    private static int addSpears(int from, int to, long occ0, long occ1,
+                                 int[] out, int n) {
+        for (int dir = 0; dir < 8; dir += 1) {
+            for (int spear : Square.ray(to, dir)) {
+                if (occupied(occ0, occ1, spear)) {
+                    break;
+                }
+                out[n] = Move.pack(from, to, spear);
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Return true iff square INDEX is in the set whose words are OCC0
+     * and OCC1.
+     */
+    private static boolean occupied(long occ0, long occ1, int index) {
+        return ((index < 64 ? occ0 : occ1) & (1L << index)) != 0;
     }
 
     @Override
@@ -473,18 +915,52 @@ class Board {
         for (int i = SIZE - 1; i >= 0; i--) {
             String gather = "   ";
             for (int j = 0; j < SIZE - 1; j++) {
-                gather += _model[i][j] + " ";
+                gather += get(j, i) + " ";
             }
-            string += gather + _model[i][SIZE - 1] + "\n";
+            string += gather + get(SIZE - 1, i) + "\n";
         }
         return string;
     }
 
     /**
-     * An empty iterator for initialization.
+     * NEIGHBORS[2 * K + W] is word W of the set of squares adjacent
+     * (orthogonally or diagonally) to the square with index K.  Also
+     * read by Searcher; never modified after initialization.
      */
-    private static final Iterator<Square> NO_SQUARES =
-            Collections.emptyIterator();
+    static final long[] NEIGHBORS = new long[2 * SIZE * SIZE];
+
+    static {
+        for (int k = 0; k < SIZE * SIZE; k += 1) {
+            for (int dc = -1; dc <= 1; dc += 1) {
+                for (int dr = -1; dr <= 1; dr += 1) {
+                    int col = k % SIZE + dc, row = k / SIZE + dr;
+                    if ((dc != 0 || dr != 0) && Square.exists(col, row)) {
+                        int n = row * SIZE + col;
+                        NEIGHBORS[2 * k + (n >>> 6)] |= 1L << n;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Zobrist keys for a WHITE, BLACK, or SPEAR on each square, in that
+     * order, generated from a fixed seed so that keys are stable across
+     * runs.
+     */
+    private static final long[] ZOBRIST = new long[3 * SIZE * SIZE];
+    /**
+     * Zobrist key included when BLACK is to move.
+     */
+    private static final long BLACK_TO_MOVE;
+
+    static {
+        Random keys = new Random(ZOBRIST_SEED);
+        for (int i = 0; i < ZOBRIST.length; i += 1) {
+            ZOBRIST[i] = keys.nextLong();
+        }
+        BLACK_TO_MOVE = keys.nextLong();
+    }
 
     /**
      * Piece whose turn it is (BLACK or WHITE).
@@ -496,11 +972,33 @@ class Board {
      */
     private Piece _winner;
     /**
-     * A representation of the board.
-     * */
-    private Piece[][] _model;
+     * The number of (queen, empty neighbor) pairs for each side,
+     * maintained incrementally by put, makeMove, and undo.
+     */
+    private int _whiteLiberties, _blackLiberties;
+    /**
+     * The Zobrist key of the current position.
+     */
+    private long _hash;
     /**
-     * A stack containing all the moves made.
-     * */
-    private Stack<Move> _moves;
+     * The number of 64-bit words in a set of squares.  Square index I
+     * is bit I % 64 of word I / 64.
+     */
+    private static final int WORDS = 2;
+    /**
+     * The squares holding white queens, black queens, and spears.
+     */
+    private long[] _white, _black, _spears;
+    /**
+     * The packed moves made, in _history[0 .. _numMoves-1].
+     */
+    private int[] _history;
+    /**
+     * The number of moves made (and not undone).
+     */
+    private int _numMoves;
+    /**
+     * Initial capacity of _history; enough for most games.
+     */
+    private static final int INITIAL_HISTORY = 96;
 }
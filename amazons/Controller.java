@@ -172,9 +172,8 @@ final class Controller {
         new Command("quit$", this::doQuit),
         new Command("seed\\s+(\\d+)$", this::doSeed),
         new Command("dump$", this::doDump),
+        new Command("stats$", this::doStats),
         new Command("new$", this::doNew),
-        new Command("([a-j](?:[1-9]|10))-([a-j](?:[1-9]|10))"
-                + "\\(([a-j](?:[1-9]|10))\\)", this::doMove),
         new Command("auto\\s+(black|white)$", this::doAuto),
         new Command("manual\\s+(black|white)$", this::doManual)
     };
@@ -200,6 +199,11 @@ final class Controller {
         if (cmnd.isEmpty()) {
             return;
         }
+        int move = Move.parse(cmnd);
+        if (move >= 0) {
+            doMove(move);
+            return;
+        }
         for (Command parser : _commands) {
             parser._matcher.reset(cmnd);
             if (parser._matcher.matches()) {
@@ -217,8 +221,10 @@ final class Controller {
      */
     private void doManual(Matcher mat) {
         if (mat.group(1).toLowerCase().equals("white")) {
+            _white.stopThinking();
             _white = _manualPlayerTemplate.create(WHITE, this);
         } else if (mat.group(1).toLowerCase().equals("black")) {
+            _black.stopThinking();
             _black = _manualPlayerTemplate.create(BLACK, this);
         }
     }
@@ -230,8 +236,10 @@ final class Controller {
      */
     private void doAuto(Matcher mat) {
         if (mat.group(1).equals("white")) {
+            _white.stopThinking();
             _white = _autoPlayerTemplate.create(WHITE, this);
         } else if (mat.group(1).equals("black")) {
+            _black.stopThinking();
             _black = _autoPlayerTemplate.create(BLACK, this);
         }
     }
@@ -239,30 +247,33 @@ final class Controller {
     /**
      * Processes and makes a move.
      *
-     * @param mat matcher
+     * @param move the packed move (see Move.pack)
      */
-    private void doMove(Matcher mat) {
-        try {
-            Square from = Square.sq(mat.group(1));
-            Square to = Square.sq(mat.group(2));
-            Square spear = Square.sq(mat.group(3));
-            _board.makeMove(from, to, spear);
-            if (board().winner() == BLACK) {
-                System.out.println("* Black wins.");
-                _winner = BLACK;
-            } else if (board().winner() == WHITE) {
-                System.out.println("* White wins.");
-                _winner = WHITE;
-            }
-        } catch (IllegalArgumentException excp) {
+    private void doMove(int move) {
+        Square from = Square.sq(Move.from(move));
+        Square to = Square.sq(Move.to(move));
+        Square spear = Square.sq(Move.spear(move));
+        if (!_board.isLegal(from, to, spear)) {
             throw error("invalid move");
         }
+        _board.makeMove(move);
+        if (board().winner() == BLACK) {
+            System.out.println("* Black wins.");
+            _winner = BLACK;
+        } else if (board().winner() == WHITE) {
+            System.out.println("* White wins.");
+            _winner = WHITE;
+        }
+        if (_winner != null) {
+            stopThinking();
+        }
     }
 
     /**
      * Command "new".
      */
     private void doNew(Matcher unused) {
+        stopThinking();
         _board.init();
         _winner = null;
     }
@@ -271,9 +282,18 @@ final class Controller {
      * Command "quit".
      */
     private void doQuit(Matcher unused) {
+        stopThinking();
         _playing = false;
     }
 
+    /**
+     * Stop both players' background thinking.
+     */
+    private void stopThinking() {
+        _white.stopThinking();
+        _black.stopThinking();
+    }
+
     /**
      * Command "seed N" where N is the first group of MAT.
      */
@@ -285,6 +305,24 @@ final class Controller {
         }
     }
 
+    /**
+     * Command "stats": report the search counts for each player's last
+     * move, for players that search.
+     */
+    private void doStats(Matcher unused) {
+        boolean any = false;
+        for (Player player : new Player[] { _white, _black }) {
+            SearchStats stats = player.searchStats();
+            if (stats != null) {
+                reportNote("%s: %s", player.myPiece().toName(), stats);
+                any = true;
+            }
+        }
+        if (!any) {
+            reportNote("No search statistics.");
+        }
+    }
+
     /**
      * Dump the contents of the board on standard output.
      */
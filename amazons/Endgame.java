@@ -0,0 +1,320 @@
+package amazons;
+
+/**
+ * Play once the queens are separated: when no region of the board (see
+ * Board.regions) holds queens of both sides, each side simply moves in
+ * its own regions until it runs out of moves, and the side that runs
+ * out first loses.  Perfect play is then to make the most moves
+ * possible, which is found by exhaustive search of each region alone.
+ * Results are cached by the region's shape (its empty squares and
+ * queens, moved to the corner of the board), so that a region met
+ * again, anywhere on the board, is solved at once.  The cache is a
+ * fixed-size EvalCache keyed by a 64-bit hash of the shape, so its
+ * memory is bounded and an entry may be lost to a later one.
+ *
+ * A region too large to search completely within NODE_BUDGET positions
+ * is left unsolved, and callers fall back on ordinary search.  Small
+ * regions may instead be looked up in a Tablebase.
+ *
+ * @author Roshan Lodha
+ */
+final class Endgame {
+
+    /**
+     * Not instantiable.
+     */
+    private Endgame() {
+    }
+
+    /**
+     * Return true iff no region of BOARD is shared by both sides.
+     */
+    static boolean separated(Board board) {
+        return board.separated();
+    }
+
+    /**
+     * Return the number of moves SIDE can make in REGION with no
+     * interference from the opponent, which must have no queens there,
+     * or -1 if REGION is too large to solve.  Regions in TABLE (if not
+     * null) are looked up rather than searched.
+     */
+    static int solve(Region region, Piece side, Tablebase table) {
+        if (table != null) {
+            int n = table.probe(region, side);
+            if (n >= 0) {
+                return n;
+            }
+        }
+        return new Solver(table).solve(region, side);
+    }
+
+    /**
+     * Return the total number of moves SIDE can make in the regions of
+     * BOARD that it owns, using TABLE (if not null) as for solve, or -1
+     * if any of those regions is too large to solve.
+     */
+    static int moves(Board board, Piece side, Tablebase table) {
+        int n = 0;
+        for (Region region : board.regions()) {
+            if (region.owner() == side) {
+                int m = solve(region, side, table);
+                if (m < 0) {
+                    return -1;
+                }
+                n += m;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Return a packed move for the side to move on BOARD that leaves it
+     * as many moves as possible afterwards, assuming BOARD is separated
+     * and the side to move has a move, or 0 if every region it owns is
+     * too large to solve.  No move in one region can change what is
+     * possible in another, since regions are joined through adjacent
+     * queens, so the first move of a longest sequence in any region
+     * the side owns is best overall.  Positions in TABLE (if not null)
+     * are not searched.
+     */
+    static int bestMove(Board board, Tablebase table) {
+        Piece side = board.turn();
+        boolean owned = false;
+        for (Region region : board.regions()) {
+            if (region.owner() == side) {
+                owned = true;
+                Solver solver = new Solver(table);
+                if (solver.solve(region, side) >= 0) {
+                    return solver._bestMove;
+                }
+            }
+        }
+        if (!owned) {
+            throw Utils.error("no moves for %s", side);
+        }
+        return 0;
+    }
+
+    /**
+     * One exhaustive search, with its own node budget.
+     */
+    private static final class Solver {
+
+        /**
+         * A search that looks up positions in TABLE, if it is not null.
+         */
+        Solver(Tablebase table) {
+            _table = table;
+        }
+
+        /**
+         * Return the most moves that SIDE's queens can make in REGION,
+         * and set _bestMove to the packed first move of such a sequence
+         * (0 if there is none); or return -1 if the budget ran out
+         * before the count was proved exact.
+         */
+        int solve(Region region, Piece side) {
+            long e0 = region.emptyBits(0), e1 = region.emptyBits(1),
+                q0 = region.queenBits(side, 0), q1 = region.queenBits(side, 1);
+            int known = known(shapeKey(e0, e1, q0, q1));
+            int n = count(e0, e1, q0, q1);
+            if (!_exhausted || n == region.size() || n == known) {
+                return n;
+            }
+            return -1;
+        }
+
+        /**
+         * Return the most moves that queens Q0/Q1 can make in sequence
+         * when the empty squares are E0/E1 (each a pair of bitboard
+         * words), and set _bestMove to the packed first move of such a
+         * sequence (0 if there is none).  Once the budget has run out,
+         * the result is only a lower bound.
+         */
+        private int count(long e0, long e1, long q0, long q1) {
+            long shape = shapeKey(e0, e1, q0, q1);
+            int known = known(shape);
+            if (known == 0) {
+                return 0;
+            }
+            int upper = Long.bitCount(e0) + Long.bitCount(e1);
+            int best = 0;
+            _nodes += 1;
+            for (int w = 0; w < 2; w += 1) {
+                for (long q = w == 0 ? q0 : q1; q != 0; q &= q - 1) {
+                    int from = (w << 6) + Long.numberOfTrailingZeros(q);
+                    long f0 = from < 64 ? 1L << from : 0,
+                        f1 = from < 64 ? 0 : 1L << from;
+                    for (int dir = 0; dir < 8; dir += 1) {
+                        for (int to : Square.ray(from, dir)) {
+                            if (!member(e0, e1, to)) {
+                                break;
+                            }
+                            long t0 = to < 64 ? 1L << to : 0,
+                                t1 = to < 64 ? 0 : 1L << to;
+                            long a0 = (e0 & ~t0) | f0, a1 = (e1 & ~t1) | f1;
+                            long nq0 = (q0 & ~f0) | t0, nq1 = (q1 & ~f1) | t1;
+                            for (int d = 0; d < 8; d += 1) {
+                                for (int spear : Square.ray(to, d)) {
+                                    if (!member(a0, a1, spear)) {
+                                        break;
+                                    }
+                                    int value = 1 + childCount(
+                                        a0 & ~(spear < 64 ? 1L << spear : 0),
+                                        a1 & ~(spear < 64 ? 0 : 1L << spear),
+                                        nq0, nq1);
+                                    if (value > best) {
+                                        best = value;
+                                        _bestMove = Move.pack(from, to, spear);
+                                        if (best == upper) {
+                                            return remember(shape, best);
+                                        }
+                                    }
+                                    if (best == known) {
+                                        return best;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            return remember(shape, best);
+        }
+
+        /**
+         * Return the most moves that queens Q0/Q1 can make when the
+         * empty squares are E0/E1, from the table or cache if possible,
+         * or 0 without searching if the budget is spent.
+         */
+        private int childCount(long e0, long e1, long q0, long q1) {
+            if (_nodes >= NODE_BUDGET) {
+                _exhausted = true;
+                return 0;
+            }
+            if (_table != null) {
+                int n = _table.probe(e0, e1, q0, q1);
+                if (n >= 0) {
+                    return n;
+                }
+            }
+            int known = known(shapeKey(e0, e1, q0, q1));
+            if (known >= 0) {
+                return known;
+            }
+            int bestMove = _bestMove, value = count(e0, e1, q0, q1);
+            _bestMove = bestMove;
+            return value;
+        }
+
+        /**
+         * Cache VALUE as the exact count for the shape whose key is
+         * SHAPE, unless the budget has run out, and return VALUE.
+         */
+        private int remember(long shape, int value) {
+            if (!_exhausted) {
+                CACHE.store(shape, value);
+            }
+            return value;
+        }
+
+        /**
+         * Table of small regions, or null.
+         */
+        private final Tablebase _table;
+        /**
+         * Positions searched so far.
+         */
+        private int _nodes;
+        /**
+         * True once some position went unsearched for lack of budget.
+         */
+        private boolean _exhausted;
+        /**
+         * The packed first move of the best sequence found by count.
+         */
+        private int _bestMove;
+    }
+
+    /**
+     * Return true iff square INDEX is in the set whose words are S0 and
+     * S1.
+     */
+    private static boolean member(long s0, long s1, int index) {
+        return ((index < 64 ? s0 : s1) & (1L << index)) != 0;
+    }
+
+    /**
+     * Return the cached exact count for the shape whose key is SHAPE,
+     * or -1 if it is not cached.
+     */
+    private static int known(long shape) {
+        long data = CACHE.probe(shape);
+        return data == 0 ? -1 : EvalCache.value(data);
+    }
+
+    /**
+     * Return a 64-bit key for the shape of the region with empty
+     * squares E0/E1 and queens Q0/Q1: the region translated so that its
+     * lowest row and leftmost column are on the edges of the board.
+     */
+    private static long shapeKey(long e0, long e1, long q0, long q1) {
+        long s0 = e0 | q0, s1 = e1 | q1;
+        int minCol = Board.SIZE, low = s0 != 0
+            ? Long.numberOfTrailingZeros(s0)
+            : 64 + Long.numberOfTrailingZeros(s1);
+        for (long s = s0; s != 0; s &= s - 1) {
+            minCol = Math.min(minCol,
+                              Long.numberOfTrailingZeros(s) % Board.SIZE);
+        }
+        for (long s = s1; s != 0; s &= s - 1) {
+            minCol = Math.min(minCol, (64 + Long.numberOfTrailingZeros(s))
+                              % Board.SIZE);
+        }
+        int shift = low / Board.SIZE * Board.SIZE + minCol;
+        long key = mix(down(e0, e1, shift, 0));
+        key = mix(key ^ down(e0, e1, shift, 1));
+        key = mix(key ^ down(q0, q1, shift, 0));
+        return mix(key ^ down(q0, q1, shift, 1));
+    }
+
+    /**
+     * Return word W of the 100-bit set S0/S1 with every member's index
+     * decreased by SHIFT (0 <= SHIFT < 100).
+     */
+    private static long down(long s0, long s1, int shift, int w) {
+        if (shift == 0) {
+            return w == 0 ? s0 : s1;
+        } else if (shift >= 64) {
+            return w == 0 ? s1 >>> (shift - 64) : 0;
+        }
+        return w == 0 ? (s0 >>> shift) | (s1 << (64 - shift))
+            : s1 >>> shift;
+    }
+
+    /**
+     * Return Z with its bits thoroughly mixed (the SplitMix64
+     * finalizer), so that distinct shapes rarely share a key.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Positions one search may visit before settling for the best count
+     * found so far.
+     */
+    private static final int NODE_BUDGET = 200_000;
+    /**
+     * Size of the cache in megabytes (about a million entries).
+     */
+    private static final int CACHE_MEGABYTES = 16;
+    /**
+     * Exact counts, keyed by shapeKey.  Shared by every player and
+     * thread, which EvalCache permits without locking.
+     */
+    private static final EvalCache CACHE = new EvalCache(CACHE_MEGABYTES);
+}
@@ -0,0 +1,99 @@
+package amazons;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size cache of static evaluations keyed by Board.hash(), so
+ * that a position reached again by transposed moves is not evaluated
+ * again.  The cache is lossy: each key has one slot, and a store simply
+ * replaces whatever was there.
+ *
+ * Several threads may probe and store at once without locking.  As in
+ * TranspositionTable, each slot's key is stored XORed with its data,
+ * so a slot torn by concurrent stores fails to match and is treated as
+ * empty.
+ *
+ * @author Roshan Lodha
+ */
+final class EvalCache {
+
+    /**
+     * A cache using at most MEGABYTES megabytes (at least one slot).
+     */
+    EvalCache(int megabytes) {
+        long bytes = (long) megabytes << 20;
+        int slots = (int) Math.min(Math.max(1, bytes / SLOT_BYTES),
+                                   MAX_SLOTS);
+        slots = Integer.highestOneBit(slots);
+        _mask = slots - 1;
+        _keys = new long[slots];
+        _data = new long[slots];
+    }
+
+    /**
+     * Remove all entries.
+     */
+    void clear() {
+        Arrays.fill(_keys, 0);
+        Arrays.fill(_data, 0);
+    }
+
+    /**
+     * Return the data stored for the position with Zobrist key KEY, or 0
+     * if there is none.  Decode it with value.
+     */
+    long probe(long key) {
+        int i = (int) key & _mask;
+        long data = _data[i];
+        if ((_keys[i] ^ data) == key && data != 0) {
+            return data;
+        }
+        return 0;
+    }
+
+    /**
+     * Record that the position with Zobrist key KEY evaluates to VALUE.
+     */
+    void store(long key, int value) {
+        int i = (int) key & _mask;
+        long data = ((long) value << VALUE_SHIFT) | PRESENT;
+        _keys[i] = key ^ data;
+        _data[i] = data;
+    }
+
+    /**
+     * Return the evaluation in cache data DATA.
+     */
+    static int value(long data) {
+        return (int) (data >> VALUE_SHIFT);
+    }
+
+    /**
+     * Layout of a slot's data: the value in the high 32 bits, and a bit
+     * that makes the data of a filled slot nonzero.
+     */
+    private static final int VALUE_SHIFT = 32;
+    /**
+     * The bit set in the data of every filled slot.
+     */
+    private static final long PRESENT = 1;
+
+    /**
+     * Bytes of storage per slot (a key and its data).
+     */
+    private static final int SLOT_BYTES = 16;
+    /**
+     * The largest number of slots, limited by the maximum array size.
+     */
+    private static final int MAX_SLOTS = 1 << 30;
+
+    /**
+     * Mask selecting a slot from a key.
+     */
+    private final int _mask;
+    /**
+     * The keys (XORed with their data) and data of the slots.  A slot
+     * whose data is 0 is empty.
+     */
+    private final long[] _keys, _data;
+}
@@ -0,0 +1,180 @@
+package amazons;
+
+import static amazons.Piece.*;
+
+/**
+ * Static evaluation of positions by territory.  Each side's distance to
+ * every empty square is found by breadth-first flood fill over the
+ * board's bitboards, counting both queen moves (any distance along a
+ * line) and king moves (one step).  A square belongs to the side that
+ * reaches it first; squares reached at the same distance favor the side
+ * to move.  Early in the game, when territory is still fluid, the score
+ * is blended with the difference in mobility.
+ *
+ * @author Roshan Lodha
+ */
+final class Evaluator {
+
+    /**
+     * Not instantiable.
+     */
+    private Evaluator() {
+    }
+
+    /**
+     * Return a heuristic value for BOARD, positive when it favors
+     * white.  BOARD's game need not be over.
+     */
+    static int evaluate(Board board) {
+        int value = QUEEN_WEIGHT * territory(board, true)
+            + KING_WEIGHT * territory(board, false);
+        int phase = Math.min(board.numMoves(), OPENING_PLIES);
+        if (phase < OPENING_PLIES) {
+            int mobility =
+                board.countMoves(WHITE) - board.countMoves(BLACK);
+            value = (value * phase + mobility * (OPENING_PLIES - phase))
+                / OPENING_PLIES;
+        }
+        return value;
+    }
+
+    /**
+     * Return the territory balance of BOARD, positive for white, by
+     * queen distance if QUEEN, and otherwise by king distance.  Each
+     * square nearer white adds SQUARE_VALUE, each nearer black subtracts
+     * it, and each equidistant square is worth TIE_VALUE to the side to
+     * move.
+     */
+    static int territory(Board board, boolean queen) {
+        int tie = board.turn() == WHITE ? TIE_VALUE : -TIE_VALUE;
+        return territory(board.queenBits(WHITE, 0), board.queenBits(WHITE, 1),
+                         board.queenBits(BLACK, 0), board.queenBits(BLACK, 1),
+                         board.emptyBits(0), board.emptyBits(1), queen, tie);
+    }
+
+    /**
+     * Return the territory balance, positive for white, when white's
+     * queens are W0/W1, black's are B0/B1, and the empty squares are
+     * E0/E1 (each a pair of bitboard words).  Distances are in queen
+     * moves if QUEEN, else in king moves.  Each square nearer white adds
+     * SQUARE_VALUE, each nearer black subtracts it, and each equidistant
+     * square adds TIE.
+     */
+    private static int territory(long w0, long w1, long b0, long b1,
+                                 long e0, long e1, boolean queen, int tie) {
+        long seenW0 = 0, seenW1 = 0, seenB0 = 0, seenB1 = 0;
+        long[] next = new long[2];
+        int value = 0;
+        while ((w0 | w1 | b0 | b1) != 0) {
+            reach(w0, w1, e0, e1, queen, next);
+            long nextW0 = next[0] & ~seenW0, nextW1 = next[1] & ~seenW1;
+            reach(b0, b1, e0, e1, queen, next);
+            long nextB0 = next[0] & ~seenB0, nextB1 = next[1] & ~seenB1;
+            seenW0 |= nextW0;
+            seenW1 |= nextW1;
+            seenB0 |= nextB0;
+            seenB1 |= nextB1;
+            value += SQUARE_VALUE
+                * (Long.bitCount(nextW0 & ~seenB0)
+                   + Long.bitCount(nextW1 & ~seenB1)
+                   - Long.bitCount(nextB0 & ~seenW0)
+                   - Long.bitCount(nextB1 & ~seenW1))
+                + tie * (Long.bitCount(nextW0 & nextB0)
+                         + Long.bitCount(nextW1 & nextB1));
+            w0 = nextW0;
+            w1 = nextW1;
+            b0 = nextB0;
+            b1 = nextB1;
+        }
+        return value;
+    }
+
+    /**
+     * Set OUT[0] and OUT[1] to the words of the set of empty squares
+     * reachable in one move from the set F0/F1, where the empty squares
+     * are E0/E1.  A move is a queen move if QUEEN, and otherwise a king
+     * move.
+     */
+    private static void reach(long f0, long f1, long e0, long e1,
+                              boolean queen, long[] out) {
+        long r0 = 0, r1 = 0;
+        for (int dir = 0; dir < 8; dir += 1) {
+            int delta = DELTAS[dir];
+            long keep0 = e0 & KEEP[2 * dir], keep1 = e1 & KEEP[2 * dir + 1];
+            long g0 = f0, g1 = f1;
+            do {
+                long n0 = shift(g0, g1, delta, 0) & keep0,
+                    n1 = shift(g0, g1, delta, 1) & keep1;
+                g0 = n0;
+                g1 = n1;
+                r0 |= n0;
+                r1 |= n1;
+            } while (queen && (g0 | g1) != 0);
+        }
+        out[0] = r0;
+        out[1] = r1;
+    }
+
+    /**
+     * Return word W of the 100-bit set G0/G1 with every member's index
+     * increased by DELTA (which may be negative).  Members shifted off
+     * either end are lost; the caller discards any that wrap around a
+     * row or land past square 99.
+     */
+    private static long shift(long g0, long g1, int delta, int w) {
+        if (delta > 0) {
+            return w == 0 ? g0 << delta
+                : (g1 << delta) | (g0 >>> (64 - delta));
+        } else {
+            return w == 0 ? (g0 >>> -delta) | (g1 << (64 + delta))
+                : g1 >>> -delta;
+        }
+    }
+
+    /**
+     * Index change for one step in each direction, in the order of
+     * Square's direction numbers.
+     */
+    private static final int[] DELTAS = new int[8];
+    /**
+     * KEEP[2 * DIR + W] is word W of the set of squares that a step in
+     * direction DIR can land on without wrapping around the board.
+     */
+    private static final long[] KEEP = new long[16];
+
+    static {
+        Square center = Square.sq(Board.SIZE / 2, Board.SIZE / 2);
+        for (int dir = 0; dir < 8; dir += 1) {
+            Square next = center.queenMove(dir, 1);
+            DELTAS[dir] = next.index() - center.index();
+            int dc = next.col() - center.col();
+            for (int k = 0; k < Board.SIZE * Board.SIZE; k += 1) {
+                int col = k % Board.SIZE - dc;
+                if (col >= 0 && col < Board.SIZE) {
+                    KEEP[2 * dir + (k >>> 6)] |= 1L << k;
+                }
+            }
+        }
+    }
+
+    /**
+     * Weight of a square won by queen distance.
+     */
+    private static final int QUEEN_WEIGHT = 2;
+    /**
+     * Weight of a square won by king distance.
+     */
+    private static final int KING_WEIGHT = 1;
+    /**
+     * Value of a square nearer one side.
+     */
+    private static final int SQUARE_VALUE = 5;
+    /**
+     * Value, to the side to move, of an equidistant square.
+     */
+    private static final int TIE_VALUE = 1;
+    /**
+     * Number of plies over which mobility gives way to territory.
+     */
+    private static final int OPENING_PLIES = 30;
+}
@@ -19,13 +19,32 @@ public class Main {
     public static void main(String... args) {
 
         CommandArgs options =
-            new CommandArgs("--display --log={0,1} --={0,2}", args);
+            new CommandArgs("--display --log={0,1} --hash=(\\d+){0,1}"
+                            + " --time=(\\d+(?:\\.\\d*)?,\\d+(?:\\.\\d*)?){0,1}"
+                            + " --threads=(\\d+){0,1} --ybw --mcts --ponder"
+                            + " --tablebase={0,1} --book={0,1}"
+                            + " --={0,2}", args);
         if (!options.ok()) {
             System.err.println("Usage: java amazons.Main [--display]"
-                               + " [--log=FILE] [INPUT [OUTPUT]]");
+                               + " [--log=FILE] [--hash=MEGABYTES]"
+                               + " [--time=MOVESECS,GAMESECS]"
+                               + " [--threads=N] [--ybw | --mcts]"
+                               + " [--ponder] [--tablebase=FILE]"
+                               + " [--book=FILE]"
+                               + " [INPUT [OUTPUT]]");
             System.exit(1);
         }
 
+        if (options.contains("--mcts")) {
+            for (String option : ALPHA_BETA_OPTIONS) {
+                if (options.contains(option)) {
+                    System.err.printf("%s cannot be used with --mcts%n",
+                                      option);
+                    System.exit(1);
+                }
+            }
+        }
+
         List<String> files = options.get("--");
         if (!files.isEmpty()) {
             try {
@@ -83,6 +102,61 @@ public class Main {
             }
         }
 
-        return new Controller(view, log, reporter, manualPlayer, new AI());
+        double moveSeconds = AI.DEFAULT_MOVE_SECONDS,
+            gameSeconds = AI.DEFAULT_GAME_SECONDS;
+        if (options.contains("--time")) {
+            String[] limits = options.getFirst("--time").split(",");
+            try {
+                moveSeconds = Double.parseDouble(limits[0]);
+                gameSeconds = Double.parseDouble(limits[1]);
+            } catch (NumberFormatException excp) {
+                throw error("Invalid time limits");
+            }
+        }
+        int threads = AI.DEFAULT_THREADS;
+        if (options.contains("--threads")) {
+            try {
+                threads = Integer.parseInt(options.getFirst("--threads"));
+            } catch (NumberFormatException excp) {
+                throw error("Invalid thread count");
+            }
+        }
+
+        Player autoPlayer;
+        if (options.contains("--mcts")) {
+            MctsPlayer mcts = new MctsPlayer();
+            mcts.setTimeLimits(moveSeconds, gameSeconds);
+            mcts.setThreads(threads);
+            autoPlayer = mcts;
+        } else {
+            AI ai = new AI();
+            if (options.contains("--hash")) {
+                try {
+                    ai.setHashSize(
+                        Integer.parseInt(options.getFirst("--hash")));
+                } catch (NumberFormatException excp) {
+                    throw error("Invalid hash size");
+                }
+            }
+            ai.setTimeLimits(moveSeconds, gameSeconds);
+            ai.setThreads(threads);
+            ai.setYoungBrothersWait(options.contains("--ybw"));
+            ai.setPondering(options.contains("--ponder"));
+            if (options.contains("--tablebase")) {
+                ai.setTablebase(
+                    Tablebase.load(options.getFirst("--tablebase")));
+            }
+            if (options.contains("--book")) {
+                ai.setBook(OpeningBook.load(options.getFirst("--book")));
+            }
+            autoPlayer = ai;
+        }
+
+        return new Controller(view, log, reporter, manualPlayer, autoPlayer);
     }
+
+    /** Options that configure only the alpha-beta player. */
+    private static final String[] ALPHA_BETA_OPTIONS = {
+        "--hash", "--ybw", "--ponder", "--tablebase", "--book"
+    };
 }
@@ -0,0 +1,430 @@
+package amazons;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Player that chooses moves by Monte Carlo Tree Search with UCT.
+ * Each iteration descends the tree by the UCT rule, expands the node it
+ * reaches once that node has been visited often enough, finishes the
+ * game with uniformly random moves, and credits the result to every
+ * node on the path.  Several threads may build the same tree at once;
+ * a node's visit is counted as soon as a thread descends into it (a
+ * virtual loss, until the playout's result arrives), which steers
+ * other threads toward different lines.  The subtree for the position
+ * after my move and my opponent's reply is kept for my next move.
+ *
+ * @author Roshan Lodha
+ */
+class MctsPlayer extends Player {
+
+    /**
+     * A new MctsPlayer with no piece or controller (intended to produce
+     * a template).
+     */
+    MctsPlayer() {
+        super(null, null);
+        _moveMillis = (long) (AI.DEFAULT_MOVE_SECONDS * 1000);
+        _gameMillis = (long) (AI.DEFAULT_GAME_SECONDS * 1000);
+        _threads = AI.DEFAULT_THREADS;
+    }
+
+    /**
+     * A new MctsPlayer playing PIECE under control of CONTROLLER, with
+     * the settings of TEMPLATE.
+     */
+    private MctsPlayer(Piece piece, Controller controller,
+                       MctsPlayer template) {
+        super(piece, controller);
+        _moveMillis = template._moveMillis;
+        _gameMillis = template._gameMillis;
+        _threads = template._threads;
+        _clock = new TimeManager(_moveMillis, _gameMillis);
+    }
+
+    @Override
+    Player create(Piece piece, Controller controller) {
+        return new MctsPlayer(piece, controller, this);
+    }
+
+    /**
+     * Make players created from me think for at most MOVESECONDS
+     * seconds per move and GAMESECONDS seconds for all their moves in a
+     * game.
+     */
+    void setTimeLimits(double moveSeconds, double gameSeconds) {
+        _moveMillis = (long) (moveSeconds * 1000);
+        _gameMillis = (long) (gameSeconds * 1000);
+    }
+
+    /**
+     * Make players created from me run playouts on THREADS threads.
+     */
+    void setThreads(int threads) {
+        _threads = Math.max(1, threads);
+    }
+
+    @Override
+    String myMove() {
+        Move move = findMove();
+        _controller.reportMove(move);
+        return move.toString();
+    }
+
+    /**
+     * Return the number of playouts run for my last move.
+     */
+    long playouts() {
+        return _playouts.get();
+    }
+
+    @Override
+    SearchStats searchStats() {
+        return _stats;
+    }
+
+    @Override
+    void stopThinking() {
+        if (_pool != null) {
+            _pool.shutdownNow();
+            _pool = null;
+        }
+    }
+
+    /**
+     * Return a move for me from the current position, assuming there
+     * is a move: the most visited move after searching until my time
+     * manager says to stop.
+     */
+    private Move findMove() {
+        Board b = board();
+        _clock.startMove(b);
+        if (_pool == null && _threads > 1) {
+            _pool = Executors.newFixedThreadPool(_threads - 1, r -> {
+                Thread t = new Thread(r, "amazons-mcts");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        Node root = reusableRoot(b);
+        if (root == null) {
+            root = new Node(0, b.turn().opponent());
+        }
+        root.expand(b, new int[Board.MAX_MOVES], ThreadLocalRandom.current());
+        _playouts.set(0);
+
+        Board position = new Board(b);
+        Node tree = root;
+        Future<?>[] helpers = new Future<?>[_threads - 1];
+        for (int i = 0; i < helpers.length; i += 1) {
+            helpers[i] = _pool.submit(() -> search(tree, position));
+        }
+        search(tree, position);
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalStateException(excp);
+            }
+        }
+
+        Node best = root.mostVisited();
+        _root = best;
+        Board after = new Board(b);
+        after.makeMove(best._move);
+        _rootHash = after.hash();
+        _rootNumMoves = after.numMoves();
+        _stats = new SearchStats();
+        _stats.countPlayouts(_playouts.get());
+        _stats.finish(_clock.elapsedMillis());
+        _clock.endMove();
+        return Move.mv(best._move);
+    }
+
+    /**
+     * Return the node kept from my last move for the position on BOARD,
+     * or null if there is none: BOARD must be the position after my
+     * last move and one reply.
+     */
+    private Node reusableRoot(Board board) {
+        Node kept = _root;
+        _root = null;
+        if (kept == null || board.numMoves() != _rootNumMoves + 1) {
+            return null;
+        }
+        Board before = new Board(board);
+        before.undo();
+        if (before.hash() != _rootHash) {
+            return null;
+        }
+        return kept.child(board.lastMove());
+    }
+
+    /**
+     * Run iterations on TREE, whose root is the position on ROOT, until
+     * out of time.  ROOT is only read, so several threads may run this
+     * at once.
+     */
+    private void search(Node tree, Board root) {
+        Board board = new Board(root);
+        Random random = ThreadLocalRandom.current();
+        int[] moves = new int[Board.MAX_MOVES],
+            queenMoves = new int[Board.MAX_QUEEN_MOVES],
+            spears = new int[Board.MAX_SPEARS];
+        Node[] path = new Node[Board.SIZE * Board.SIZE];
+        while (!_clock.softExpired()) {
+            board.copy(root);
+            tree.visit();
+            Node node = tree;
+            int n = 0;
+            path[n++] = tree;
+            while (board.winner() == null) {
+                Node child = node.select();
+                if (child == null) {
+                    if (node.visits() < EXPAND_VISITS
+                        || !node.expand(board, moves, random)) {
+                        break;
+                    }
+                    child = node.select();
+                }
+                board.makeMove(child._move);
+                path[n++] = child;
+                node = child;
+            }
+            Piece winner = playout(board, random, queenMoves, spears);
+            for (int i = 0; i < n; i += 1) {
+                path[i].credit(winner);
+            }
+            _playouts.incrementAndGet();
+        }
+    }
+
+    /**
+     * Play random moves on BOARD until the game is over, and return the
+     * winner.  QUEENMOVES and SPEARS are scratch buffers for move
+     * generation, and RANDOM chooses the moves: first a random half-move,
+     * then a random spear throw after it.
+     */
+    private static Piece playout(Board board, Random random,
+                                 int[] queenMoves, int[] spears) {
+        while (board.winner() == null) {
+            int numQueenMoves =
+                board.generateQueenMoves(board.turn(), queenMoves);
+            int numSpears = board.generateSpears(
+                queenMoves[random.nextInt(numQueenMoves)], spears);
+            board.makeMove(spears[random.nextInt(numSpears)]);
+        }
+        return board.winner();
+    }
+
+    /**
+     * A node of the search tree: a position, reached by a move.  Its
+     * visit count changes only under its parent's lock (or its own, for
+     * the root), and its win count and children only under its own.
+     */
+    private static final class Node {
+
+        /**
+         * A node reached by packed move MOVE, made by MOVER.
+         */
+        Node(int move, Piece mover) {
+            _move = move;
+            _mover = mover;
+        }
+
+        /**
+         * Count a visit to me as a root.
+         */
+        synchronized void visit() {
+            _visits += 1;
+        }
+
+        /**
+         * Return my number of visits, including those whose playouts
+         * are still running.
+         */
+        int visits() {
+            return _visits;
+        }
+
+        /**
+         * If I have not been expanded, give me the legal moves from
+         * BOARD, my position, in an order shuffled by RANDOM, using
+         * BUFFER as scratch space.  Return false iff I have no moves.
+         */
+        synchronized boolean expand(Board board, int[] buffer,
+                                    Random random) {
+            if (_moves == null) {
+                int n = board.generateMoves(board.turn(), buffer);
+                for (int i = n - 1; i > 0; i -= 1) {
+                    int j = random.nextInt(i + 1), t = buffer[i];
+                    buffer[i] = buffer[j];
+                    buffer[j] = t;
+                }
+                _moves = Arrays.copyOf(buffer, n);
+                _children = new Node[n];
+            }
+            return _moves.length > 0;
+        }
+
+        /**
+         * Choose my child to descend to and count a visit to it, or
+         * return null if I have not been expanded.  Children not yet
+         * visited come first; after that, the child with the highest
+         * UCT value.
+         */
+        synchronized Node select() {
+            if (_moves == null || _moves.length == 0) {
+                return null;
+            }
+            Node best;
+            if (_numChildren < _moves.length) {
+                best = new Node(_moves[_numChildren], _mover.opponent());
+                _children[_numChildren] = best;
+                _numChildren += 1;
+            } else {
+                double logVisits = Math.log(_visits), bestValue = -1;
+                best = null;
+                for (int i = 0; i < _numChildren; i += 1) {
+                    Node child = _children[i];
+                    double value = (double) child._wins / child._visits
+                        + EXPLORATION * Math.sqrt(logVisits / child._visits);
+                    if (value > bestValue) {
+                        bestValue = value;
+                        best = child;
+                    }
+                }
+            }
+            best._visits += 1;
+            return best;
+        }
+
+        /**
+         * Record the outcome of a playout through me, won by WINNER.
+         */
+        synchronized void credit(Piece winner) {
+            if (winner == _mover) {
+                _wins += 1;
+            }
+        }
+
+        /**
+         * Return my child reached by packed move MOVE, or null if I have
+         * none.
+         */
+        synchronized Node child(int move) {
+            for (int i = 0; i < _numChildren; i += 1) {
+                if (_children[i]._move == move) {
+                    return _children[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Return my most visited child.  I must have been expanded.
+         */
+        synchronized Node mostVisited() {
+            if (_numChildren == 0) {
+                return new Node(_moves[0], _mover.opponent());
+            }
+            Node best = _children[0];
+            for (int i = 1; i < _numChildren; i += 1) {
+                if (_children[i]._visits > best._visits) {
+                    best = _children[i];
+                }
+            }
+            return best;
+        }
+
+        /**
+         * The packed move leading to me.
+         */
+        private final int _move;
+        /**
+         * The side that made _move.
+         */
+        private final Piece _mover;
+        /**
+         * Visits to me, and how many of their playouts _mover won.
+         */
+        private volatile int _visits, _wins;
+        /**
+         * My legal moves, in the order their children are created, or
+         * null if I have not been expanded.
+         */
+        private int[] _moves;
+        /**
+         * My children: _children[i] is reached by _moves[i], for i <
+         * _numChildren.
+         */
+        private Node[] _children;
+        /**
+         * The number of children created.
+         */
+        private int _numChildren;
+    }
+
+    /**
+     * A node is expanded once it has been visited this many times.
+     */
+    private static final int EXPAND_VISITS = 8;
+    /**
+     * Weight of the exploration term in the UCT rule.
+     */
+    private static final double EXPLORATION = 0.7;
+
+    /**
+     * My limits on thinking time per move and per game, in
+     * milliseconds.
+     */
+    private long _moveMillis, _gameMillis;
+
+    /**
+     * Number of threads running playouts for my moves.
+     */
+    private int _threads;
+
+    /**
+     * Decides when to stop searching (null in a template).
+     */
+    private TimeManager _clock;
+
+    /**
+     * The tree kept from my last move (rooted at the position after it),
+     * or null.
+     */
+    private Node _root;
+
+    /**
+     * Board.hash() for the position at _root.
+     */
+    private long _rootHash;
+
+    /**
+     * Board.numMoves() for the position at _root.
+     */
+    private int _rootNumMoves;
+
+    /**
+     * Playouts run for the current or last move.
+     */
+    private final AtomicLong _playouts = new AtomicLong();
+
+    /**
+     * Counts for my last move, or null if I have not moved.
+     */
+    private SearchStats _stats;
+
+    /**
+     * Threads for helper searches, or null if there are none or they
+     * have been released by stopThinking.
+     */
+    private ExecutorService _pool;
+}
@@ -1,10 +1,8 @@
 package amazons;
 
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import static amazons.Square.sq;
-import static amazons.Square.SQ;
 
 /** A move in the game of Amazons. As for Squares, Moves are immutable
  *  and unique: there is only one move object for each possible move
@@ -14,14 +12,6 @@ import static amazons.Square.SQ;
  */
 final class Move {
 
-    /** The syntax for a move, using either the forms FROM-TO(SPEAR) or
-     *  FROM TO SPEAR.  Either groups 1-3 or 4-6 in a match from this pattern
-     *  contain FROM, TO, and SPEAR (the other 3 groups are null in each
-     *  case. */
-    static final Pattern MOVE_PATTERN =
-        Pattern.compile(String.format("%s-%s\\(%s\\)|%s\\s+%s\\s+%s",
-                                      SQ, SQ, SQ, SQ, SQ, SQ));
-
     /** Return the square moved from. */
     Square from() {
         return _from;
@@ -37,37 +27,155 @@ final class Move {
         return _spear;
     }
 
-    /** Return the unique Move FROM-TO(SPEAR). */
+    /** Return the unique Move FROM-TO(SPEAR), or null if FROM-TO or
+     *  TO-SPEAR is not a queen move.  May be called from any thread. */
     static Move mv(Square from, Square to, Square spear) {
-        if (MOVES[from.index()][to.index()][spear.index()] == null) {
-            MOVES[from.index()][to.index()][spear.index()] =
-                new Move(from, to, spear);
+        int k = key(from.index(), to.index(), spear.index());
+        if (k < 0) {
+            return null;
+        }
+        Move result = MOVES.get(k);
+        if (result == null) {
+            MOVES.compareAndSet(k, null, new Move(from, to, spear));
+            result = MOVES.get(k);
         }
-        return MOVES[from.index()][to.index()][spear.index()];
+        return result;
+    }
+
+    /** Return the position of FROM-TO(SPEAR) (square indices) in MOVES,
+     *  or -1 if it is not a pair of queen moves. */
+    private static int key(int from, int to, int spear) {
+        int first = FIRST_SPEAR[from * Board.SIZE * Board.SIZE + to],
+            rank = SPEAR_RANK[to * Board.SIZE * Board.SIZE + spear];
+        return first < 0 || rank < 0 ? -1 : first + rank;
+    }
+
+    /** Return the unique Move whose packed form is MOVE. */
+    static Move mv(int move) {
+        return mv(Square.sq(from(move)), Square.sq(to(move)),
+                  Square.sq(spear(move)));
+    }
+
+    /** Return the packed form of the move whose squares have indices
+     *  FROM, TO, and SPEAR: seven bits each, FROM lowest. */
+    static int pack(int from, int to, int spear) {
+        return from | (to << SQUARE_BITS) | (spear << (2 * SQUARE_BITS));
+    }
+
+    /** Return the index of the square moved from in packed MOVE. */
+    static int from(int move) {
+        return move & SQUARE_MASK;
+    }
+
+    /** Return the index of the square moved to in packed MOVE. */
+    static int to(int move) {
+        return (move >>> SQUARE_BITS) & SQUARE_MASK;
+    }
+
+    /** Return the index of the spear's destination in packed MOVE. */
+    static int spear(int move) {
+        return (move >>> (2 * SQUARE_BITS)) & SQUARE_MASK;
+    }
+
+    /** Return my packed form. */
+    int packed() {
+        return pack(_from.index(), _to.index(), _spear.index());
     }
 
     /** Return the Move denoted by STR, if STR denotes a move with
      *  valid syntax in which the piece move and spear throw are proper
      *  queen moves, and null otherwise. */
-    static Move mv(String str) {
-        _moveMatcher.reset(str);
-        if (_moveMatcher.matches()) {
-            int k = _moveMatcher.group(1) != null ? 1 : 4;
-            Square from = sq(_moveMatcher.group(k)),
-                to = sq(_moveMatcher.group(k + 1)),
-                spear = sq(_moveMatcher.group(k + 2));
-            if (from.isQueenMove(to) && to.isQueenMove(spear)) {
-                return mv(from, to, spear);
-            }
-        }
-        return null;
+    static Move mv(CharSequence str) {
+        int move = parse(str);
+        return move < 0 ? null : mv(move);
     }
 
     /** Return true iff STR has the right format for a Move, ignoring whether
      *  its piece-move and spear-throw are valid queen moves. */
-    static boolean isGrammaticalMove(String str) {
-        _moveMatcher.reset(str);
-        return _moveMatcher.matches();
+    static boolean isGrammaticalMove(CharSequence str) {
+        return parse(str) >= 0;
+    }
+
+    /** Return the packed form of the move denoted by STR, which has the
+     *  form FROM-TO(SPEAR) or FROM TO SPEAR (separated by any nonempty
+     *  whitespace), or -1 if STR has neither form.  Does not check that
+     *  the move and spear throw are queen moves.  Allocates nothing and
+     *  keeps no state, so it is safe to call from any thread. */
+    static int parse(CharSequence str) {
+        int from = scanSquare(str, 0);
+        if (from < 0) {
+            return -1;
+        }
+        int p = from >>> SCAN_SHIFT, to, spear;
+        if (p < str.length() && str.charAt(p) == '-') {
+            to = scanSquare(str, p + 1);
+            if (to < 0) {
+                return -1;
+            }
+            p = to >>> SCAN_SHIFT;
+            if (p >= str.length() || str.charAt(p) != '(') {
+                return -1;
+            }
+            spear = scanSquare(str, p + 1);
+            if (spear < 0) {
+                return -1;
+            }
+            p = spear >>> SCAN_SHIFT;
+            if (p >= str.length() || str.charAt(p) != ')') {
+                return -1;
+            }
+            p += 1;
+        } else {
+            int q = skipSpace(str, p);
+            to = q == p ? -1 : scanSquare(str, q);
+            if (to < 0) {
+                return -1;
+            }
+            p = to >>> SCAN_SHIFT;
+            q = skipSpace(str, p);
+            spear = q == p ? -1 : scanSquare(str, q);
+            if (spear < 0) {
+                return -1;
+            }
+            p = spear >>> SCAN_SHIFT;
+        }
+        if (p != str.length()) {
+            return -1;
+        }
+        return pack(from & SQUARE_MASK, to & SQUARE_MASK,
+                    spear & SQUARE_MASK);
+    }
+
+    /** Return the index of the square whose designation (e.g., a4 or
+     *  j10) starts at STR[P], plus the position just after it shifted
+     *  left by SCAN_SHIFT, or -1 if there is no square designation at
+     *  P. */
+    private static int scanSquare(CharSequence str, int p) {
+        int n = str.length();
+        if (p + 1 >= n) {
+            return -1;
+        }
+        char c = str.charAt(p), r = str.charAt(p + 1);
+        if (c < 'a' || c > 'j' || r < '1' || r > '9') {
+            return -1;
+        }
+        int row = r - '1', end = p + 2;
+        if (r == '1' && end < n && str.charAt(end) == '0') {
+            row = Board.SIZE - 1;
+            end += 1;
+        }
+        return (row * Board.SIZE + c - 'a') | (end << SCAN_SHIFT);
+    }
+
+    /** Return the position of the first character in STR at or after P
+     *  that is not whitespace (as for \s in a regular expression), or
+     *  STR's length if there is none. */
+    private static int skipSpace(CharSequence str, int p) {
+        while (p < str.length()
+               && " \t\n\013\f\r".indexOf(str.charAt(p)) >= 0) {
+            p += 1;
+        }
+        return p;
     }
 
     @Override
@@ -81,14 +189,64 @@ final class Move {
         _str = String.format("%s-%s(%s)", from, to, spear);
     }
 
-    /** The cache of all Moves created. */
-    private static final Move[][][] MOVES = new Move[100][100][100];
+    /** Number of bits used for one square index in a packed move. */
+    private static final int SQUARE_BITS = 7;
+    /** Mask selecting one square index from a packed move. */
+    private static final int SQUARE_MASK = (1 << SQUARE_BITS) - 1;
+    /** Shift of the end position in the result of scanSquare. */
+    private static final int SCAN_SHIFT = 8;
+
+    /** SPEAR_RANK[T * 100 + S] is the number of squares with indices
+     *  less than S that are a queen move from T, if T-S is a queen move,
+     *  and -1 otherwise. */
+    private static final byte[] SPEAR_RANK =
+        new byte[Board.SIZE * Board.SIZE * Board.SIZE * Board.SIZE];
+    /** FIRST_SPEAR[F * 100 + T] is the position in MOVES of the first
+     *  move F-T(S), if F-T is a queen move, and -1 otherwise.  The moves
+     *  F-T(S) then occupy consecutive positions in order of SPEAR_RANK. */
+    private static final int[] FIRST_SPEAR =
+        new int[Board.SIZE * Board.SIZE * Board.SIZE * Board.SIZE];
+
+    /** The number of (FROM, TO, SPEAR) triples that are pairs of queen
+     *  moves. */
+    private static final int NUM_MOVES;
+
+    static {
+        final int n = Board.SIZE * Board.SIZE;
+        int[] reach = new int[n];
+        for (int t = 0; t < n; t += 1) {
+            for (int s = 0; s < n; s += 1) {
+                if (sq(t).isQueenMove(sq(s))) {
+                    SPEAR_RANK[t * n + s] = (byte) reach[t];
+                    reach[t] += 1;
+                } else {
+                    SPEAR_RANK[t * n + s] = -1;
+                }
+            }
+        }
+        int total = 0;
+        for (int f = 0; f < n; f += 1) {
+            for (int t = 0; t < n; t += 1) {
+                if (sq(f).isQueenMove(sq(t))) {
+                    FIRST_SPEAR[f * n + t] = total;
+                    total += reach[t];
+                } else {
+                    FIRST_SPEAR[f * n + t] = -1;
+                }
+            }
+        }
+        NUM_MOVES = total;
+    }
+
+    /** The cache of all Moves created, indexed by key.  Entries are
+     *  created on first use; compareAndSet keeps them unique when
+     *  several threads race to create the same one. */
+    private static final AtomicReferenceArray<Move> MOVES =
+        new AtomicReferenceArray<>(NUM_MOVES);
 
     /** The components of a Move. */
     private final Square _from, _to, _spear;
     /** The printed form of a Move. */
-    private String _str;
-    /**  A utility Matcher for moves, using MOVE_PATTERN. */
-    private static Matcher _moveMatcher = MOVE_PATTERN.matcher("");
+    private final String _str;
 }
 
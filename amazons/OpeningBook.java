@@ -0,0 +1,353 @@
+package amazons;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static amazons.Piece.*;
+
+/**
+ * A book of opening moves, chosen by deep searches done in advance.
+ * Each record is a position's Board.hash(), a packed candidate move, the
+ * move's weight (its relative chance of being played), and the value
+ * and depth of the search that scored it.  Records are sorted by key,
+ * so that a position's candidates are found by binary search of the
+ * book's file, which is mapped into memory rather than read.  The file
+ * is a 4-byte MAGIC and a 4-byte record count followed by the records.
+ *
+ * The book is built from the initial position by scoring each position's
+ * most promising moves with a search of each resulting position, keeping
+ * those nearly as good as the best, and continuing from the positions
+ * after the best BRANCHING of them, to a given number of plies.  The
+ * positions of each ply are searched in parallel.  Run "java
+ * amazons.OpeningBook FILE [PLIES [DEPTH [THREADS]]]" to build one.
+ *
+ * @author Roshan Lodha
+ */
+final class OpeningBook {
+
+    /**
+     * Build a book of ARGS[1] plies (default DEFAULT_PLIES), scoring
+     * moves by searches of ARGS[2] levels (default DEFAULT_DEPTH) on
+     * ARGS[3] threads (default 1), and write it to the file named
+     * ARGS[0].
+     */
+    public static void main(String... args) {
+        if (args.length < 1 || args.length > 4) {
+            System.err.println("Usage: java amazons.OpeningBook FILE"
+                               + " [PLIES [DEPTH [THREADS]]]");
+            System.exit(1);
+        }
+        int plies = args.length > 1 ? Integer.parseInt(args[1])
+            : DEFAULT_PLIES;
+        int depth = args.length > 2 ? Integer.parseInt(args[2])
+            : DEFAULT_DEPTH;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        build(plies, depth, threads).save(args[0]);
+    }
+
+    /**
+     * A book whose header and records are DATA.
+     */
+    private OpeningBook(ByteBuffer data) {
+        if (data.capacity() < HEADER_BYTES || data.getInt(0) != MAGIC
+            || data.capacity()
+               != HEADER_BYTES + (long) data.getInt(4) * RECORD_BYTES) {
+            throw Utils.error("not an opening book");
+        }
+        _data = data;
+        _size = data.getInt(4);
+    }
+
+    /**
+     * Return the book in the file named FILE, mapped into memory.
+     */
+    static OpeningBook load(String file) {
+        try (FileChannel channel = FileChannel.open(Paths.get(file),
+                                                    StandardOpenOption.READ)) {
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY,
+                                               0, channel.size()));
+        } catch (IOException excp) {
+            throw Utils.error("could not read opening book %s: %s", file,
+                              excp.getMessage());
+        }
+    }
+
+    /**
+     * Write me to the file named FILE.
+     */
+    void save(String file) {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.getChannel().write(_data.duplicate().clear());
+        } catch (IOException excp) {
+            throw Utils.error("could not write opening book %s: %s", file,
+                              excp.getMessage());
+        }
+    }
+
+    /**
+     * Return the number of records in me.
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Return a packed move for BOARD from my candidates for its
+     * position, chosen at random by RANDOM in proportion to their
+     * weights, or 0 if I have none.  Candidates that are not legal on
+     * BOARD (whose key must belong to another position) are ignored.
+     */
+    int move(Board board, Random random) {
+        long key = board.hash();
+        int lo = 0, hi = _size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int total = 0;
+        for (int i = lo; i < _size && key(i) == key; i += 1) {
+            if (board.isLegal(move(i))) {
+                total += weight(i);
+            }
+        }
+        if (total == 0) {
+            return 0;
+        }
+        int pick = random.nextInt(total);
+        for (int i = lo; ; i += 1) {
+            if (board.isLegal(move(i))) {
+                pick -= weight(i);
+                if (pick < 0) {
+                    return move(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the key of record I.
+     */
+    private long key(int i) {
+        return _data.getLong(HEADER_BYTES + i * RECORD_BYTES);
+    }
+
+    /**
+     * Return the packed move of record I.
+     */
+    private int move(int i) {
+        return _data.getInt(HEADER_BYTES + i * RECORD_BYTES + 8);
+    }
+
+    /**
+     * Return the weight of record I.
+     */
+    private int weight(int i) {
+        return _data.getInt(HEADER_BYTES + i * RECORD_BYTES + 12);
+    }
+
+    /**
+     * Return a book of PLIES plies whose moves are scored by searches of
+     * DEPTH levels, built on THREADS threads.
+     */
+    static OpeningBook build(int plies, int depth, int threads) {
+        List<Entry> entries = new ArrayList<>();
+        List<Board> positions = new ArrayList<>();
+        positions.add(new Board());
+        Set<Long> seen = new HashSet<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        TranspositionTable table =
+            new TranspositionTable(AI.DEFAULT_HASH_MEGABYTES);
+        try {
+            for (int ply = 0; ply < plies; ply += 1) {
+                List<Future<List<Entry>>> results = new ArrayList<>();
+                for (Board position : positions) {
+                    results.add(pool.submit(
+                        () -> candidates(position, depth, table)));
+                }
+                List<Board> next = new ArrayList<>();
+                for (int i = 0; i < positions.size(); i += 1) {
+                    List<Entry> found = results.get(i).get();
+                    entries.addAll(found);
+                    for (int k = 0; k < Math.min(BRANCHING, found.size());
+                         k += 1) {
+                        Board child = new Board(positions.get(i));
+                        child.makeMove(found.get(k)._move);
+                        if (child.winner() == null
+                            && seen.add(child.hash())) {
+                            next.add(child);
+                        }
+                    }
+                }
+                positions = next;
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException(excp);
+        } finally {
+            pool.shutdown();
+        }
+
+        entries.sort(Comparator.comparingLong((Entry e) -> e._key)
+                     .thenComparingInt(e -> -e._weight));
+        ByteBuffer data = ByteBuffer.allocate(HEADER_BYTES
+                                              + entries.size()
+                                              * RECORD_BYTES);
+        data.putInt(MAGIC).putInt(entries.size());
+        for (Entry e : entries) {
+            data.putLong(e._key).putInt(e._move).putInt(e._weight)
+                .putInt(e._value).putInt(e._depth);
+        }
+        return new OpeningBook(data);
+    }
+
+    /**
+     * Return the records for the candidate moves from POSITION, best
+     * first: the CANDIDATES moves that look best statically are each
+     * scored by a search of DEPTH levels (sharing TABLE), and those
+     * within MARGIN of the best are kept, weighted by how close they
+     * come to it.
+     */
+    private static List<Entry> candidates(Board position, int depth,
+                                          TranspositionTable table) {
+        Board board = new Board(position);
+        int sense = board.turn() == WHITE ? 1 : -1;
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = board.generateMoves(board.turn(), moves);
+        long[] ranked = new long[n];
+        for (int i = 0; i < n; i += 1) {
+            board.makeMove(moves[i]);
+            long value = sense * Evaluator.evaluate(board);
+            board.undo();
+            ranked[i] = (-value << 32) | i;
+        }
+        Arrays.sort(ranked);
+
+        Searcher searcher = new Searcher(table, TimeManager.unlimited());
+        List<Entry> result = new ArrayList<>();
+        int best = -Searcher.INFTY;
+        for (int k = 0; k < Math.min(CANDIDATES, n); k += 1) {
+            int move = moves[(int) ranked[k]];
+            board.makeMove(move);
+            int value = -Searcher.WINNING_VALUE;
+            if (board.winner() == board.turn().opponent()) {
+                value = Searcher.WINNING_VALUE;
+            } else if (board.winner() == null) {
+                searcher.setPosition(board, 1);
+                for (int d = 1; d < depth; d += 1) {
+                    value = sense * searcher.search(d);
+                }
+                if (depth <= 1) {
+                    value = sense * Evaluator.evaluate(board);
+                }
+            }
+            board.undo();
+            best = Math.max(best, value);
+            result.add(new Entry(position.hash(), move, value, depth));
+        }
+        final int top = best,
+            floor = Math.max(top, -Searcher.INFTY + MARGIN) - MARGIN;
+        result.removeIf(e -> e._value < floor);
+        for (Entry e : result) {
+            e._weight = 1 + Math.max(0, MARGIN - (top - e._value));
+        }
+        result.sort(Comparator.comparingInt((Entry e) -> -e._value));
+        return result;
+    }
+
+    /**
+     * A record of the book while it is built.
+     */
+    private static final class Entry {
+
+        /**
+         * A record for MOVE from the position with key KEY, scored VALUE
+         * (to the side making it) by a search of DEPTH levels.
+         */
+        Entry(long key, int move, int value, int depth) {
+            _key = key;
+            _move = move;
+            _value = value;
+            _depth = depth;
+        }
+
+        /**
+         * The position's key and the packed move.
+         */
+        private final long _key;
+        /**
+         * The packed move.
+         */
+        private final int _move;
+        /**
+         * The move's score and the depth of the search that found it.
+         */
+        private final int _value, _depth;
+        /**
+         * The move's relative chance of being played.
+         */
+        private int _weight;
+    }
+
+    /**
+     * Default number of plies in a book.
+     */
+    static final int DEFAULT_PLIES = 4;
+    /**
+     * Default depth of the searches that score moves.
+     */
+    static final int DEFAULT_DEPTH = 3;
+    /**
+     * Number of moves from each position scored by search.
+     */
+    private static final int CANDIDATES = 8;
+    /**
+     * Number of candidates from each position whose positions are
+     * explored in turn.
+     */
+    private static final int BRANCHING = 2;
+    /**
+     * Candidates worse than the best by more than this (about one
+     * square of territory) are dropped.
+     */
+    private static final int MARGIN = 15;
+
+    /**
+     * Value identifying an opening book file.
+     */
+    private static final int MAGIC = 0x414d4f42;
+    /**
+     * Size of the file header: MAGIC and the number of records.
+     */
+    private static final int HEADER_BYTES = 8;
+    /**
+     * Size of a record: key, move, weight, value, and depth.
+     */
+    private static final int RECORD_BYTES = 24;
+
+    /**
+     * The file header and records.
+     */
+    private final ByteBuffer _data;
+    /**
+     * The number of records.
+     */
+    private final int _size;
+}
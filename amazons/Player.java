@@ -48,6 +48,21 @@ abstract class Player {
      */
     abstract String myMove();
 
+    /**
+     * Stop any thinking I am doing in the background, because my game
+     * is over or I am being replaced.  Does nothing by default.
+     */
+    void stopThinking() {
+    }
+
+    /**
+     * Return counts describing the search for my last move, or null if
+     * I do not search.
+     */
+    SearchStats searchStats() {
+        return null;
+    }
+
     /**
      * My Controller.
      */
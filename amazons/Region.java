@@ -0,0 +1,98 @@
+package amazons;
+
+import static amazons.Piece.*;
+
+/**
+ * A region of a board: a set of empty squares connected by king moves,
+ * together with the queens next to them.  Squares on either side of a
+ * queen belong to the same region, since the queen can move into
+ * either, and so do the squares around two queens next to each other,
+ * since either may step aside for the other.  Regions are created by
+ * Board.regions().
+ *
+ * @author Roshan Lodha
+ */
+final class Region {
+
+    /**
+     * A region whose empty squares are the set with words EMPTY0 and
+     * EMPTY1, and whose queens are WHITE0/WHITE1 and BLACK0/BLACK1.
+     */
+    Region(long empty0, long empty1, long white0, long white1,
+           long black0, long black1) {
+        _empty0 = empty0;
+        _empty1 = empty1;
+        _white0 = white0;
+        _white1 = white1;
+        _black0 = black0;
+        _black1 = black1;
+    }
+
+    /**
+     * Return the number of empty squares in me.
+     */
+    int size() {
+        return Long.bitCount(_empty0) + Long.bitCount(_empty1);
+    }
+
+    /**
+     * Return word W (0 or 1) of my set of empty squares.
+     */
+    long emptyBits(int w) {
+        return w == 0 ? _empty0 : _empty1;
+    }
+
+    /**
+     * Return word W (0 or 1) of the set of SIDE's queens in me.
+     */
+    long queenBits(Piece side, int w) {
+        if (side == WHITE) {
+            return w == 0 ? _white0 : _white1;
+        } else {
+            return w == 0 ? _black0 : _black1;
+        }
+    }
+
+    /**
+     * Return true iff SIDE has a queen in me.
+     */
+    boolean has(Piece side) {
+        return (queenBits(side, 0) | queenBits(side, 1)) != 0;
+    }
+
+    /**
+     * Return the side (WHITE or BLACK) that alone has queens in me, or
+     * null if I am shared or dead.
+     */
+    Piece owner() {
+        if (has(WHITE) == has(BLACK)) {
+            return null;
+        }
+        return has(WHITE) ? WHITE : BLACK;
+    }
+
+    /**
+     * Return true iff both sides have queens in me, so that my squares
+     * are still contested.
+     */
+    boolean isShared() {
+        return has(WHITE) && has(BLACK);
+    }
+
+    /**
+     * Return true iff no queen can reach me.
+     */
+    boolean isDead() {
+        return !has(WHITE) && !has(BLACK);
+    }
+
+    /**
+     * Words of my set of empty squares.
+     */
+    private final long _empty0, _empty1;
+    /**
+     * Words of the sets of white and black queens next to my squares
+     * or to other queens in me.
+     */
+    private final long _white0, _white1, _black0, _black1;
+}
@@ -0,0 +1,222 @@
+package amazons;
+
+import java.util.Arrays;
+
+/**
+ * Counters describing a search: nodes visited, leaf evaluations,
+ * transposition table probes and hits, and beta cutoffs, of which how
+ * many came from the first move searched; and for each completed
+ * iteration of iterative deepening, the time and nodes it took.  A
+ * Monte Carlo search counts only its playouts.  Each
+ * Searcher counts into its own SearchStats, so counting needs no
+ * synchronization; the counts of several searches are combined with
+ * add.
+ *
+ * @author Roshan Lodha
+ */
+final class SearchStats {
+
+    /**
+     * Reset all counts to 0 and forget all iterations.
+     */
+    void clear() {
+        _nodes = _evals = _probes = _hits = _cutoffs = _firstCutoffs = 0;
+        _playouts = 0;
+        _elapsedMillis = 0;
+        _depths = 0;
+    }
+
+    /**
+     * Count a node.
+     */
+    void countNode() {
+        _nodes += 1;
+    }
+
+    /**
+     * Count a leaf evaluation.
+     */
+    void countEval() {
+        _evals += 1;
+    }
+
+    /**
+     * Count a transposition table probe, which found an entry iff HIT.
+     */
+    void countProbe(boolean hit) {
+        _probes += 1;
+        if (hit) {
+            _hits += 1;
+        }
+    }
+
+    /**
+     * Count a beta cutoff, which came from the first move searched iff
+     * FIRST.
+     */
+    void countCutoff(boolean first) {
+        _cutoffs += 1;
+        if (first) {
+            _firstCutoffs += 1;
+        }
+    }
+
+    /**
+     * Count N playouts.
+     */
+    void countPlayouts(long n) {
+        _playouts += n;
+    }
+
+    /**
+     * Add the counts (but not the iterations) of OTHER to mine.
+     */
+    void add(SearchStats other) {
+        _nodes += other._nodes;
+        _evals += other._evals;
+        _probes += other._probes;
+        _hits += other._hits;
+        _cutoffs += other._cutoffs;
+        _firstCutoffs += other._firstCutoffs;
+        _playouts += other._playouts;
+    }
+
+    /**
+     * Record that the next iteration (to one more level than the last)
+     * finished ELAPSEDMILLIS milliseconds after the search started,
+     * when the searching thread had visited NODES nodes in all.
+     */
+    void finishDepth(long elapsedMillis, long nodes) {
+        if (_depths == _depthMillis.length) {
+            _depthMillis = Arrays.copyOf(_depthMillis, 2 * _depths);
+            _depthNodes = Arrays.copyOf(_depthNodes, 2 * _depths);
+        }
+        _depthMillis[_depths] = elapsedMillis;
+        _depthNodes[_depths] = nodes;
+        _depths += 1;
+    }
+
+    /**
+     * Record that the whole search took ELAPSEDMILLIS milliseconds.
+     */
+    void finish(long elapsedMillis) {
+        _elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Return the number of nodes counted.
+     */
+    long nodes() {
+        return _nodes;
+    }
+
+    /**
+     * Return the number of playouts counted.
+     */
+    long playouts() {
+        return _playouts;
+    }
+
+    /**
+     * Return the number of leaf evaluations counted.
+     */
+    long evals() {
+        return _evals;
+    }
+
+    /**
+     * Return the fraction of probes that hit, or 0 if there were none.
+     */
+    double hitRate() {
+        return _probes == 0 ? 0 : (double) _hits / _probes;
+    }
+
+    /**
+     * Return the fraction of cutoffs that came from the first move
+     * searched, or 0 if there were none.  Near 1 means good move
+     * ordering.
+     */
+    double firstCutoffRate() {
+        return _cutoffs == 0 ? 0 : (double) _firstCutoffs / _cutoffs;
+    }
+
+    /**
+     * Return the deepest completed iteration, or 0 if none.
+     */
+    int depth() {
+        return _depths;
+    }
+
+    /**
+     * Return the effective branching factor: the ratio of the nodes
+     * taken by the last completed iteration to those taken by the one
+     * before, or 0 if fewer than two iterations completed.
+     */
+    double branchingFactor() {
+        if (_depths < 2) {
+            return 0;
+        }
+        long last = _depthNodes[_depths - 1] - _depthNodes[_depths - 2],
+            before = _depthNodes[_depths - 2]
+            - (_depths > 2 ? _depthNodes[_depths - 3] : 0);
+        return before == 0 ? 0 : (double) last / before;
+    }
+
+    /**
+     * Return the nodes searched per second, or 0 if no time passed.
+     */
+    long nodesPerSecond() {
+        return _elapsedMillis == 0 ? 0 : _nodes * 1000 / _elapsedMillis;
+    }
+
+    /**
+     * Return the playouts run per second, or 0 if no time passed.
+     */
+    long playoutsPerSecond() {
+        return _elapsedMillis == 0 ? 0 : _playouts * 1000 / _elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        if (_playouts > 0) {
+            return String.format("playouts %d, %d per second", _playouts,
+                                 playoutsPerSecond());
+        }
+        StringBuilder depths = new StringBuilder();
+        for (int d = 0; d < _depths; d += 1) {
+            depths.append(String.format(" %d:%dms", d + 1,
+                                        _depthMillis[d]));
+        }
+        return String.format("nodes %d, %d nps, evals %d, tt hits %.1f%%,"
+                             + " first-move cutoffs %.1f%%, ebf %.1f,"
+                             + " depth%s",
+                             _nodes, nodesPerSecond(), _evals,
+                             100 * hitRate(), 100 * firstCutoffRate(),
+                             branchingFactor(),
+                             _depths == 0 ? " 0" : depths.toString());
+    }
+
+    /**
+     * Counts of nodes, leaf evaluations, table probes and hits, cutoffs,
+     * and cutoffs by the first move.
+     */
+    private long _nodes, _evals, _probes, _hits, _cutoffs, _firstCutoffs;
+    /**
+     * Count of Monte Carlo playouts.
+     */
+    private long _playouts;
+    /**
+     * Duration of the whole search, in milliseconds.
+     */
+    private long _elapsedMillis;
+    /**
+     * The number of completed iterations, which are to depths 1 ..
+     * _depths.
+     */
+    private int _depths;
+    /**
+     * For each completed iteration, indexed by depth - 1, the elapsed
+     * time and the searching thread's total nodes when it finished.
+     */
+    private long[] _depthMillis = new long[8], _depthNodes = new long[8];
+}
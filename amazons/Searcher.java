@@ -0,0 +1,575 @@
+package amazons;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+import static amazons.Piece.*;
+
+/**
+ * One thread's alpha-beta search, with its own copy of the board and
+ * its own move buffers.  Several Searchers may share a transposition
+ * table and a time manager; each runs as a Runnable that deepens until
+ * stopped, while the AI's main Searcher is driven one depth at a time.
+ *
+ * @author Roshan Lodha
+ */
+final class Searcher implements Runnable {
+
+    /**
+     * A position magnitude indicating a win (for white if positive, black
+     * if negative).
+     */
+    static final int WINNING_VALUE = Integer.MAX_VALUE - 1;
+    /**
+     * A magnitude greater than a normal value.
+     */
+    static final int INFTY = Integer.MAX_VALUE;
+    /**
+     * The deepest search attempted.  No game lasts this many more plies.
+     */
+    static final int MAX_DEPTH = 92;
+
+    /**
+     * A Searcher that caches results in TABLE and stops when CLOCK's
+     * hard deadline passes.
+     */
+    Searcher(TranspositionTable table, TimeManager clock) {
+        _table = table;
+        _clock = clock;
+        _board = new Board();
+        _queenMoves = new int[MAX_DEPTH + 1][Board.MAX_QUEEN_MOVES];
+        _orderScores = new long[MAX_DEPTH + 1][Board.MAX_QUEEN_MOVES];
+        _spearMoves = new int[MAX_DEPTH + 1][Board.MAX_SPEARS];
+        _history = new int[Board.SIZE * Board.SIZE * Board.SIZE * Board.SIZE];
+        _killers = new int[2 * (MAX_DEPTH + 1)];
+    }
+
+    /**
+     * Prepare to search from a copy of BOARD, starting from depth
+     * STARTDEPTH when run as a thread.
+     */
+    void setPosition(Board board, int startDepth) {
+        _board.copy(board);
+        _startDepth = startDepth;
+        _bestMove = 0;
+        _stats.clear();
+        _aborted = false;
+        _stopped = false;
+        age();
+        _haveLastValue = false;
+    }
+
+    /**
+     * Prepare my move ordering for a new position: halve my history
+     * scores, so that old results fade, and forget my killer moves.
+     * Done by setPosition; call it directly before searching a new
+     * position through search(Board, ...).
+     */
+    void age() {
+        for (int i = 0; i < _history.length; i += 1) {
+            _history[i] >>= 1;
+        }
+        Arrays.fill(_killers, 0);
+    }
+
+    /**
+     * Ask this search to stop as soon as possible.  May be called from
+     * any thread.
+     */
+    void stop() {
+        _stopped = true;
+    }
+
+    /**
+     * Return true iff the last search was abandoned before finishing.
+     */
+    boolean aborted() {
+        return _aborted;
+    }
+
+    /**
+     * Return the packed best move found by the last search that
+     * finished, or 0 if none has.
+     */
+    int bestMove() {
+        return _bestMove;
+    }
+
+    /**
+     * Return the number of nodes visited since setPosition.
+     */
+    long nodes() {
+        return _stats.nodes();
+    }
+
+    /**
+     * Return killer move I (0 or 1) for positions PLY plies below the
+     * root, or 0 if there is none.
+     */
+    int killer(int ply, int i) {
+        return _killers[2 * ply + i];
+    }
+
+    /**
+     * Return my counts since setPosition.  They are updated without
+     * synchronization, so are only meaningful to other threads once my
+     * search has finished.
+     */
+    SearchStats stats() {
+        return _stats;
+    }
+
+    /**
+     * Search to increasing depths from my start depth until stopped or
+     * out of time.  This is how helper threads search: they share the
+     * work only through the transposition table, and starting some of
+     * them one ply deeper keeps them from all searching the same tree.
+     */
+    @Override
+    public void run() {
+        for (int depth = _startDepth; depth <= MAX_DEPTH && !_aborted;
+             depth += 1) {
+            int value = search(depth);
+            if (Math.abs(value) == WINNING_VALUE) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Make my searches selective iff ON: forward pruning of spear
+     * throws and late move reductions, as described at findMove.
+     * Searches are exact (full width) by default.
+     */
+    void setSelective(boolean on) {
+        _selective = on;
+    }
+
+    /**
+     * Score positions whose regions are all in TABLE as won or lost,
+     * or stop doing so if TABLE is null (the default).
+     */
+    void setTablebase(Tablebase table) {
+        _tablebase = table;
+    }
+
+    /**
+     * Look up evaluations in CACHE before computing them, and store
+     * them there afterwards, or stop doing so if CACHE is null (the
+     * default).
+     */
+    void setEvalCache(EvalCache cache) {
+        _evalCache = cache;
+    }
+
+    /**
+     * Search my position to DEPTH levels, returning its value (positive
+     * for white) and recording its best move for bestMove, unless the
+     * search is abandoned.  After the first iteration, searches first
+     * with an aspiration window around the previous iteration's value,
+     * and again with a full window only if the value falls outside it.
+     */
+    int search(int depth) {
+        int sense = _board.turn() == WHITE ? 1 : -1;
+        int value;
+        if (_haveLastValue && Math.abs(_lastValue) < WINNING_VALUE) {
+            int alpha = _lastValue - ASPIRATION, beta = _lastValue + ASPIRATION;
+            value = findMove(_board, depth, 0, true, alpha, beta);
+            if (!_aborted && (value <= alpha || value >= beta)) {
+                value = findMove(_board, depth, 0, true, -INFTY, INFTY);
+            }
+        } else {
+            value = findMove(_board, depth, 0, true, -INFTY, INFTY);
+        }
+        if (!_aborted) {
+            _lastValue = value;
+            _haveLastValue = true;
+        }
+        return sense * value;
+    }
+
+    /**
+     * Search BOARD, which is not my own board, to DEPTH levels with
+     * window ALPHA..BETA as for findMove, returning its value to the
+     * side to move.  The search is abandoned, returning a meaningless
+     * value, when CANCELLED becomes true, as well as when stopped or out
+     * of time.  BOARD is returned to its original position.
+     */
+    int search(Board board, int depth, int alpha, int beta,
+               BooleanSupplier cancelled) {
+        _aborted = false;
+        _cancelled = cancelled;
+        int value = findMove(board, depth, 0, false, alpha, beta);
+        _cancelled = null;
+        return value;
+    }
+
+    /**
+     * Find a move from position BOARD and return its value to the side
+     * to move (negamax), recording the move found in _bestMove iff
+     * SAVEMOVE.  Searches up to DEPTH levels.  The value is exact if it
+     * is strictly between ALPHA and BETA, and otherwise an upper bound
+     * (<= ALPHA) or lower bound (>= BETA) on the true value.  Searching
+     * at level 0 simply returns a static estimate of the board value and
+     * does not set _bestMove.  BOARD is PLY plies below the root of the
+     * search, which may be more than the levels searched above it once
+     * moves are reduced.
+     *
+     * This is a principal variation search: the first move is searched
+     * with the full window, and each later one with a null window just
+     * above the best value so far, which only proves it no better; a
+     * move that proves better is searched again with the full window.
+     * Results are cached in _table.  A cached move for the position is
+     * tried first, then this ply's killer moves, then the rest in order
+     * of their history scores.  Once stopped, cancelled, or past the
+     * hard deadline, sets _aborted and returns a meaningless value.
+     *
+     * If I am selective, then at nodes below the root with less than
+     * LMR_DEPTH levels to go, a half-move's spear throws other than the
+     * first are skipped unless they land next to an opponent's queen;
+     * deeper nodes, whose results matter more, see every throw.  Moves
+     * late in the order are searched to reduced depth, being searched
+     * again to full depth if they prove better than ALPHA.  Hash and
+     * killer moves are neither skipped nor reduced.
+     */
+    private int findMove(Board board, int depth, int ply,
+                         boolean saveMove, int alpha, int beta) {
+        _stats.countNode();
+        if (_stats.nodes() % CLOCK_INTERVAL == 0
+            && (_stopped || _clock.hardExpired()
+                || (_cancelled != null && _cancelled.getAsBoolean()))) {
+            _aborted = true;
+        }
+        if (_aborted) {
+            return 0;
+        }
+        if (depth == 0 || board.winner() != null) {
+            return board.turn() == WHITE ? staticScore(board)
+                : -staticScore(board);
+        }
+        long key = board.hash();
+        long entry = _table.probe(key);
+        int hashMove = 0;
+        _stats.countProbe(entry != 0);
+        if (entry != 0) {
+            hashMove = TranspositionTable.move(entry);
+            if (!board.isLegal(hashMove)) {
+                hashMove = 0;
+            } else if (!saveMove && TranspositionTable.depth(entry) >= depth) {
+                int score = TranspositionTable.score(entry);
+                switch (TranspositionTable.bound(entry)) {
+                case TranspositionTable.EXACT:
+                    return score;
+                case TranspositionTable.LOWER:
+                    alpha = Math.max(alpha, score);
+                    break;
+                default:
+                    beta = Math.min(beta, score);
+                    break;
+                }
+                if (alpha >= beta) {
+                    return score;
+                }
+            }
+        }
+        int alpha0 = alpha;
+        int best = -INFTY, bestMove = 0;
+        int[] queenMoves = _queenMoves[depth];
+        int numQueenMoves =
+            board.generateQueenMoves(board.turn(), queenMoves);
+        orderQueenMoves(board, queenMoves, numQueenMoves,
+                        _orderScores[depth], _history, depth > 1);
+        int killer0 = _killers[2 * ply], killer1 = _killers[2 * ply + 1];
+        toFront(queenMoves, numQueenMoves, halfMove(killer1));
+        toFront(queenMoves, numQueenMoves, halfMove(killer0));
+        toFront(queenMoves, numQueenMoves, halfMove(hashMove));
+        boolean selective = _selective && !saveMove;
+        boolean prune = selective && depth < LMR_DEPTH;
+        long near0 = 0, near1 = 0;
+        if (prune) {
+            Piece opponent = board.turn().opponent();
+            for (int w = 0; w < 2; w += 1) {
+                for (long queens = board.queenBits(opponent, w); queens != 0;
+                     queens &= queens - 1) {
+                    int k = 64 * w + Long.numberOfTrailingZeros(queens);
+                    near0 |= Board.NEIGHBORS[2 * k];
+                    near1 |= Board.NEIGHBORS[2 * k + 1];
+                }
+            }
+        }
+        int[] moves = _spearMoves[depth];
+        int searched = 0;
+        for (int q = 0; q < numQueenMoves && alpha < beta; q += 1) {
+            int numMoves = board.generateSpears(queenMoves[q], moves);
+            toFront(moves, numMoves, killer1);
+            toFront(moves, numMoves, killer0);
+            toFront(moves, numMoves, hashMove);
+            for (int i = 0; i < numMoves && alpha < beta; i += 1) {
+                int tempMove = moves[i];
+                boolean special = tempMove == hashMove
+                    || tempMove == killer0 || tempMove == killer1;
+                int spear = Move.spear(tempMove);
+                if (prune && i > 0 && !special
+                    && ((spear < 64 ? near0 : near1) & (1L << spear)) == 0) {
+                    continue;
+                }
+                board.makeMove(tempMove);
+                int value;
+                if (bestMove == 0) {
+                    value = -findMove(board, depth - 1, ply + 1, false,
+                                      -beta, -alpha);
+                } else {
+                    int reduction = 0;
+                    if (selective && depth >= LMR_DEPTH && !special
+                        && searched >= LMR_MOVES) {
+                        reduction = searched >= 4 * LMR_MOVES ? 2 : 1;
+                    }
+                    value = -findMove(board, depth - 1 - reduction, ply + 1,
+                                      false, -alpha - 1, -alpha);
+                    if (reduction > 0 && value > alpha) {
+                        value = -findMove(board, depth - 1, ply + 1, false,
+                                          -alpha - 1, -alpha);
+                    }
+                    if (value > alpha && value < beta) {
+                        value = -findMove(board, depth - 1, ply + 1, false,
+                                          -beta, -alpha);
+                    }
+                }
+                board.undo();
+                searched += 1;
+                if (value > best) {
+                    best = value;
+                    bestMove = tempMove;
+                }
+                alpha = Math.max(alpha, value);
+            }
+        }
+        if (_aborted) {
+            return 0;
+        }
+        if (saveMove) {
+            _bestMove = bestMove;
+        }
+        if (alpha >= beta) {
+            _stats.countCutoff(searched == 1);
+            _history[Move.from(bestMove) * Board.SIZE * Board.SIZE
+                     + Move.to(bestMove)] += depth * depth;
+            if (bestMove != killer0) {
+                _killers[2 * ply + 1] = killer0;
+                _killers[2 * ply] = bestMove;
+            }
+        }
+        int bound = best <= alpha0 ? TranspositionTable.UPPER
+            : best >= beta ? TranspositionTable.LOWER
+            : TranspositionTable.EXACT;
+        _table.store(key, bestMove, best, depth, bound);
+        return best;
+    }
+
+    /**
+     * If MOVE is among the first N entries of MOVES, move it to the
+     * front, keeping the others in order.  Does nothing if MOVE is 0.
+     */
+    static void toFront(int[] moves, int n, int move) {
+        if (move == 0) {
+            return;
+        }
+        for (int i = 0; i < n; i += 1) {
+            if (moves[i] == move) {
+                System.arraycopy(moves, 0, moves, 1, i);
+                moves[0] = move;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Return the half-move (queen move only) of packed move MOVE, or 0
+     * if MOVE is 0.
+     */
+    private static int halfMove(int move) {
+        return move == 0 ? 0 : Move.pack(Move.from(move), Move.to(move), 0);
+    }
+
+    /**
+     * Sort the first N half-moves in MOVES, those with the highest
+     * scores in HISTORY (indexed by from * 100 + to, or null) first.
+     * If MOBILITY, ties go to those leaving the side to move on BOARD
+     * with the greater mobility advantage (before throwing its spear).
+     * Good half-moves first mean a cutoff skips all the spear throws of
+     * the remaining ones.  KEYS is scratch space of the same size as
+     * MOVES.
+     */
+    static void orderQueenMoves(Board board, int[] moves, int n,
+                                long[] keys, int[] history,
+                                boolean mobility) {
+        if (history == null && !mobility) {
+            return;
+        }
+        Piece me = board.turn();
+        for (int i = 0; i < n; i += 1) {
+            int move = moves[i], j;
+            long key = 0;
+            if (history != null) {
+                key = (long) history[Move.from(move) * Board.SIZE * Board.SIZE
+                                     + Move.to(move)] << 32;
+            }
+            if (mobility) {
+                board.makeHalfMove(move);
+                key += board.countMoves(me) - board.countMoves(me.opponent());
+                board.undoHalfMove(move);
+            }
+            for (j = i; j > 0 && keys[j - 1] < key; j -= 1) {
+                keys[j] = keys[j - 1];
+                moves[j] = moves[j - 1];
+            }
+            keys[j] = key;
+            moves[j] = move;
+        }
+    }
+
+    /**
+     * Return a heuristic value for BOARD: a win or loss if its game is
+     * over, and otherwise its value from my evaluation cache, if there,
+     * or else from evaluate.
+     */
+    private int staticScore(Board board) {
+        _stats.countEval();
+        Piece winner = board.winner();
+        if (winner == BLACK) {
+            return -WINNING_VALUE;
+        } else if (winner == WHITE) {
+            return WINNING_VALUE;
+        } else if (_evalCache == null) {
+            return evaluate(board);
+        }
+        long key = board.hash(), cached = _evalCache.probe(key);
+        if (cached != 0) {
+            return EvalCache.value(cached);
+        }
+        int value = evaluate(board);
+        _evalCache.store(key, value);
+        return value;
+    }
+
+    /**
+     * Return a heuristic value for BOARD, whose game is not over: a win
+     * or loss if its outcome is in my tablebase, and otherwise its
+     * evaluation by Evaluator.  The queens are rarely separated before
+     * TABLEBASE_PLIES moves, so the tablebase is not consulted earlier.
+     */
+    private int evaluate(Board board) {
+        if (_tablebase != null && board.numMoves() >= TABLEBASE_PLIES) {
+            Piece winner = _tablebase.winner(board);
+            if (winner != null) {
+                return winner == WHITE ? WINNING_VALUE : -WINNING_VALUE;
+            }
+        }
+        return Evaluator.evaluate(board);
+    }
+
+    /**
+     * Moves played before positions are looked up in the tablebase.
+     */
+    private static final int TABLEBASE_PLIES = 40;
+    /**
+     * Moves searched at a node before the rest are searched with reduced
+     * depth (by two plies after four times as many).
+     */
+    private static final int LMR_MOVES = 12;
+    /**
+     * The least remaining depth at which moves are reduced, and at
+     * which spear throws are no longer pruned.
+     */
+    private static final int LMR_DEPTH = 3;
+    /**
+     * Half-width of the aspiration window around the previous
+     * iteration's value.
+     */
+    private static final int ASPIRATION = 25;
+    /**
+     * Stop flags and the clock are consulted once per this many nodes.
+     */
+    private static final int CLOCK_INTERVAL = 1024;
+
+    /**
+     * Cached search results, possibly shared with other Searchers.
+     */
+    private final TranspositionTable _table;
+    /**
+     * Decides when to abandon a search.
+     */
+    private final TimeManager _clock;
+    /**
+     * My copy of the position being searched.
+     */
+    private final Board _board;
+    /**
+     * Reusable buffers, indexed by remaining search depth, for half-moves
+     * and for the complete moves of one half-move.
+     */
+    private final int[][] _queenMoves, _spearMoves;
+    /**
+     * Reusable buffers, indexed by remaining search depth, for the sort
+     * keys of half-moves.
+     */
+    private final long[][] _orderScores;
+    /**
+     * History scores: _history[FROM * 100 + TO] accumulates the square
+     * of the remaining depth at each cutoff by a move from FROM to TO.
+     * Halved for each new position, so old results fade.
+     */
+    private final int[] _history;
+    /**
+     * Killer moves: _killers[2 * PLY] and _killers[2 * PLY + 1] are the
+     * two most recent moves (0 if none) to cause a cutoff PLY plies
+     * below the root.
+     */
+    private final int[] _killers;
+    /**
+     * The value, to the side to move, of the last iteration of search
+     * that finished, if _haveLastValue.
+     */
+    private int _lastValue;
+    /**
+     * True iff an iteration has finished since setPosition.
+     */
+    private boolean _haveLastValue;
+    /**
+     * True iff my searches prune and reduce.
+     */
+    private boolean _selective;
+    /**
+     * Outcomes of separated positions with small regions, or null.
+     */
+    private Tablebase _tablebase;
+    /**
+     * Cached evaluations, or null.
+     */
+    private EvalCache _evalCache;
+    /**
+     * The depth at which run starts deepening.
+     */
+    private int _startDepth;
+    /**
+     * The packed best move of the last search that finished, or 0.
+     */
+    private int _bestMove;
+    /**
+     * My counts since setPosition.
+     */
+    private final SearchStats _stats = new SearchStats();
+    /**
+     * True iff the current search has been abandoned.
+     */
+    private boolean _aborted;
+    /**
+     * Set by stop(), from another thread.
+     */
+    private volatile boolean _stopped;
+    /**
+     * During search(Board, ...), says when to abandon the search;
+     * otherwise null.
+     */
+    private BooleanSupplier _cancelled;
+}
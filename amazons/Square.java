@@ -67,7 +67,7 @@ final class Square {
      * @param steps steps
      */
     boolean isRealSquare(int dir, int steps) {
-        return exists(DIR[dir][0] * steps + _col, DIR[dir][1] * steps + _row);
+        return steps > 0 && steps <= RAYS[8 * _index + dir].length;
     }
 
     /**
@@ -100,7 +100,10 @@ final class Square {
      * result is null the resulting square is a queen move away from me.
      */
     Square queenMove(int dir, int steps) {
-        return sq(DIR[dir][0] * steps + _col, DIR[dir][1] * steps + _row);
+        if (dir < 0 || dir >= 8 || !isRealSquare(dir, steps)) {
+            return null;
+        }
+        return SQUARES[RAYS[8 * _index + dir][steps - 1]];
     }
 
     /**
@@ -178,6 +181,25 @@ final class Square {
         return sq(posn.substring(0, 1), posn.substring(1));
     }
 
+    /**
+     * Return the indices of the squares reached from the square with
+     * index INDEX by moving 1, 2, ... steps in direction DIR (as for
+     * queenMove), nearest first, up to the edge of the board.  The
+     * result is shared and must not be modified.
+     */
+    static int[] ray(int index, int dir) {
+        return RAYS[8 * index + dir];
+    }
+
+    /**
+     * Return word W of the set of squares strictly between the squares
+     * with indices FROM and TO, if they are a queen move apart, and 0
+     * otherwise.  Square index I is bit I % 64 of word I / 64.
+     */
+    static long between(int from, int to, int w) {
+        return BETWEEN[2 * (from * Board.SIZE * Board.SIZE + to) + w];
+    }
+
     /**
      * Return an iterator over all Squares.
      */
@@ -219,6 +241,45 @@ final class Square {
         }
     }
 
+    /**
+     * RAYS[8 * K + DIR] is the value of ray(K, DIR).
+     */
+    private static final int[][] RAYS = new int[8 * Board.SIZE * Board.SIZE][];
+
+    /**
+     * BETWEEN[2 * (FROM * 100 + TO) + W] is the value of
+     * between(FROM, TO, W).
+     */
+    private static final long[] BETWEEN =
+            new long[2 * Board.SIZE * Board.SIZE * Board.SIZE * Board.SIZE];
+
+    static {
+        int[] path = new int[Board.SIZE];
+        for (int k = 0; k < Board.SIZE * Board.SIZE; k += 1) {
+            for (int dir = 0; dir < 8; dir += 1) {
+                int n = 0;
+                long w0 = 0, w1 = 0;
+                for (int col = k % Board.SIZE + DIR[dir][0],
+                         row = k / Board.SIZE + DIR[dir][1];
+                     exists(col, row);
+                     col += DIR[dir][0], row += DIR[dir][1]) {
+                    int to = row * Board.SIZE + col;
+                    int pair = 2 * (k * Board.SIZE * Board.SIZE + to);
+                    BETWEEN[pair] = w0;
+                    BETWEEN[pair + 1] = w1;
+                    if (to < 64) {
+                        w0 |= 1L << to;
+                    } else {
+                        w1 |= 1L << to;
+                    }
+                    path[n] = to;
+                    n += 1;
+                }
+                RAYS[8 * k + dir] = Arrays.copyOf(path, n);
+            }
+        }
+    }
+
     /**
      * My index position.
      */
@@ -0,0 +1,296 @@
+package amazons;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static amazons.Piece.*;
+
+/**
+ * A table of the exact number of moves a lone queen can make in every
+ * region that fits in a BOX x BOX square of the board.  Entry
+ * (MASK << 4) | QUEEN, a byte, is the count for the queen on square
+ * QUEEN of the box and the empty squares in the set MASK, where square
+ * R * BOX + C of the box is row R and column C from its lower left
+ * corner.  Entries whose queen is in MASK are unused.
+ *
+ * The table is built by dynamic programming over the number of empty
+ * squares, since every move uses up exactly one, with each layer
+ * divided among several threads.  Its file is a 4-byte MAGIC followed
+ * by the entries, and is mapped into memory rather than read.  Run
+ * "java amazons.Tablebase FILE [THREADS]" to build one.
+ *
+ * @author Roshan Lodha
+ */
+final class Tablebase {
+
+    /**
+     * The width and height of the box that regions must fit in.
+     */
+    static final int BOX = 4;
+
+    /**
+     * Build a table on THREADS threads (ARGS[1], default 1) and write it
+     * to the file named ARGS[0].
+     */
+    public static void main(String... args) {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: java amazons.Tablebase FILE"
+                               + " [THREADS]");
+            System.exit(1);
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        build(threads).save(args[0]);
+    }
+
+    /**
+     * A table whose entries are the bytes of DATA from position
+     * HEADER_BYTES on.
+     */
+    private Tablebase(ByteBuffer data) {
+        if (data.capacity() != HEADER_BYTES + ENTRIES
+            || data.getInt(0) != MAGIC) {
+            throw Utils.error("not a tablebase");
+        }
+        _data = data;
+    }
+
+    /**
+     * Return the table in the file named FILE, mapped into memory.
+     */
+    static Tablebase load(String file) {
+        try (FileChannel channel = FileChannel.open(Paths.get(file),
+                                                    StandardOpenOption.READ)) {
+            return new Tablebase(channel.map(FileChannel.MapMode.READ_ONLY,
+                                             0, channel.size()));
+        } catch (IOException excp) {
+            throw Utils.error("could not read tablebase %s: %s", file,
+                              excp.getMessage());
+        }
+    }
+
+    /**
+     * Write me to the file named FILE.
+     */
+    void save(String file) {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.getChannel().write(_data.duplicate().clear());
+        } catch (IOException excp) {
+            throw Utils.error("could not write tablebase %s: %s", file,
+                              excp.getMessage());
+        }
+    }
+
+    /**
+     * Return a table computed on THREADS threads.
+     */
+    static Tablebase build(int threads) {
+        byte[] data = new byte[HEADER_BYTES + ENTRIES];
+        ByteBuffer.wrap(data).putInt(0, MAGIC);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int size = 1; size < BOX * BOX; size += 1) {
+                List<Future<?>> parts = new ArrayList<>();
+                for (int i = 0; i < threads; i += 1) {
+                    int part = i, empties = size;
+                    parts.add(pool.submit(
+                        () -> buildLayer(data, empties, part, threads)));
+                }
+                for (Future<?> part : parts) {
+                    part.get();
+                }
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException(excp);
+        } finally {
+            pool.shutdown();
+        }
+        return new Tablebase(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Fill in the entries of DATA with SIZE empty squares whose masks
+     * are PART modulo PARTS, assuming that all entries with fewer empty
+     * squares are done.
+     */
+    private static void buildLayer(byte[] data, int size, int part,
+                                   int parts) {
+        for (int mask = part; mask < 1 << (BOX * BOX); mask += parts) {
+            if (Integer.bitCount(mask) != size) {
+                continue;
+            }
+            for (int queen = 0; queen < BOX * BOX; queen += 1) {
+                if ((mask & (1 << queen)) != 0) {
+                    continue;
+                }
+                int best = 0;
+                for (int[] ray : BOX_RAYS[queen]) {
+                    for (int to : ray) {
+                        if ((mask & (1 << to)) == 0) {
+                            break;
+                        }
+                        int after = (mask & ~(1 << to)) | (1 << queen);
+                        for (int[] spears : BOX_RAYS[to]) {
+                            for (int spear : spears) {
+                                if ((after & (1 << spear)) == 0) {
+                                    break;
+                                }
+                                best = Math.max(best, 1 + data[HEADER_BYTES
+                                    + index(after & ~(1 << spear), to)]);
+                            }
+                        }
+                    }
+                }
+                data[HEADER_BYTES + index(mask, queen)] = (byte) best;
+            }
+        }
+    }
+
+    /**
+     * Return the number of moves the lone queen in the set Q0/Q1 can
+     * make when the empty squares are E0/E1 (each a pair of bitboard
+     * words), or -1 if there is not exactly one queen or the squares do
+     * not fit in my box.
+     */
+    int probe(long e0, long e1, long q0, long q1) {
+        if (Long.bitCount(q0) + Long.bitCount(q1) != 1
+            || Long.bitCount(e0) + Long.bitCount(e1) >= BOX * BOX) {
+            return -1;
+        }
+        int minRow = Board.SIZE, maxRow = -1,
+            minCol = Board.SIZE, maxCol = -1;
+        for (int w = 0; w < 2; w += 1) {
+            for (long s = w == 0 ? e0 | q0 : e1 | q1; s != 0; s &= s - 1) {
+                int k = (w << 6) + Long.numberOfTrailingZeros(s);
+                int row = k / Board.SIZE, col = k % Board.SIZE;
+                minRow = Math.min(minRow, row);
+                maxRow = Math.max(maxRow, row);
+                minCol = Math.min(minCol, col);
+                maxCol = Math.max(maxCol, col);
+            }
+        }
+        if (maxRow - minRow >= BOX || maxCol - minCol >= BOX) {
+            return -1;
+        }
+        int mask = 0;
+        for (int w = 0; w < 2; w += 1) {
+            for (long s = w == 0 ? e0 : e1; s != 0; s &= s - 1) {
+                mask |= 1 << boxSquare((w << 6)
+                                       + Long.numberOfTrailingZeros(s),
+                                       minRow, minCol);
+            }
+        }
+        int queen = boxSquare(q0 != 0 ? Long.numberOfTrailingZeros(q0)
+                              : 64 + Long.numberOfTrailingZeros(q1),
+                              minRow, minCol);
+        return _data.get(HEADER_BYTES + index(mask, queen));
+    }
+
+    /**
+     * Return the number of moves SIDE can make in REGION, which it owns,
+     * or -1 if REGION is not in the table.
+     */
+    int probe(Region region, Piece side) {
+        return probe(region.emptyBits(0), region.emptyBits(1),
+                     region.queenBits(side, 0), region.queenBits(side, 1));
+    }
+
+    /**
+     * Return the winner of BOARD with perfect play, if its queens are
+     * separated and every region with queens is in the table, and
+     * otherwise null.  The side to move wins iff it can make more moves
+     * than its opponent.  Boards whose queens are not separated, which
+     * are most of those a search meets, are rejected without building
+     * their regions.
+     */
+    Piece winner(Board board) {
+        if (!board.separated()) {
+            return null;
+        }
+        int[] moves = new int[2];
+        for (Region region : board.regions()) {
+            if (region.isShared()) {
+                return null;
+            }
+            Piece owner = region.owner();
+            if (owner != null) {
+                int n = probe(region, owner);
+                if (n < 0) {
+                    return null;
+                }
+                moves[owner == WHITE ? 0 : 1] += n;
+            }
+        }
+        Piece mover = board.turn();
+        int mine = moves[mover == WHITE ? 0 : 1],
+            theirs = moves[mover == WHITE ? 1 : 0];
+        return mine > theirs ? mover : mover.opponent();
+    }
+
+    /**
+     * Return the entry number for the queen on box square QUEEN with the
+     * empty squares MASK.
+     */
+    private static int index(int mask, int queen) {
+        return mask << 4 | queen;
+    }
+
+    /**
+     * Return the box square of the board square with index K in the
+     * box whose lower left corner is at row MINROW and column MINCOL.
+     */
+    private static int boxSquare(int k, int minRow, int minCol) {
+        return (k / Board.SIZE - minRow) * BOX + k % Board.SIZE - minCol;
+    }
+
+    /**
+     * Value identifying a tablebase file.
+     */
+    private static final int MAGIC = 0x414d5442;
+    /**
+     * Size of the file header.
+     */
+    private static final int HEADER_BYTES = 4;
+    /**
+     * Number of entries.
+     */
+    private static final int ENTRIES = 1 << (BOX * BOX + 4);
+
+    /**
+     * BOX_RAYS[S][DIR] is the box squares reached from box square S by
+     * moving 1, 2, ... steps in direction DIR, nearest first, up to the
+     * edge of the box.
+     */
+    private static final int[][][] BOX_RAYS = new int[BOX * BOX][8][];
+
+    static {
+        for (int s = 0; s < BOX * BOX; s += 1) {
+            int k = (s / BOX) * Board.SIZE + s % BOX;
+            for (int dir = 0; dir < 8; dir += 1) {
+                List<Integer> ray = new ArrayList<>();
+                for (int to : Square.ray(k, dir)) {
+                    if (to / Board.SIZE >= BOX || to % Board.SIZE >= BOX) {
+                        break;
+                    }
+                    ray.add(boxSquare(to, 0, 0));
+                }
+                BOX_RAYS[s][dir] =
+                    ray.stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+    }
+
+    /**
+     * The file header and entries.
+     */
+    private final ByteBuffer _data;
+}
@@ -1,8 +1,5 @@
 package amazons;
 
-import java.util.regex.Matcher;
-
-import static amazons.Move.MOVE_PATTERN;
 import static amazons.Move.isGrammaticalMove;
 
 /**
@@ -39,30 +36,13 @@ class TextPlayer extends Player {
             if (line == null) {
                 return "quit";
             }
-            Matcher match = MOVE_PATTERN.matcher(line);
-            String from, to, spear;
-            Move move;
-            if (match.matches()) {
-                if (match.group(1) == null) {
-                    from = match.group(4);
-                    to = match.group(5);
-                    spear = match.group(6);
-                } else {
-                    from = match.group(1);
-                    to = match.group(2);
-                    spear = match.group(3);
-                }
-                move = Move.mv(Square.sq(from),
-                        Square.sq(to), Square.sq(spear));
-            } else {
+            if (!isGrammaticalMove(line)) {
                 return line;
             }
-            if (line == null) {
-                return "quit";
-            } else if (!board().isLegal(move) || !isGrammaticalMove(line)) {
+            Move move = Move.mv(line);
+            if (move == null || !board().isLegal(move)) {
                 _controller.reportError("Invalid move. "
                         + "Please try  again.");
-                continue;
             } else {
                 return move.toString();
             }
@@ -0,0 +1,161 @@
+package amazons;
+
+/**
+ * Decides how long an AI may think about each move, given a limit per
+ * move and a budget for all of its moves in a game.  Each move gets a
+ * share of the remaining game budget: a soft deadline after which no
+ * new search iteration should start, and a hard deadline at which the
+ * search in progress is abandoned.
+ *
+ * @author Roshan Lodha
+ */
+final class TimeManager {
+
+    /**
+     * A manager allowing MOVEMILLIS milliseconds for any one move and
+     * GAMEMILLIS milliseconds for all of a player's moves in a game.
+     */
+    TimeManager(long moveMillis, long gameMillis) {
+        _moveMillis = moveMillis;
+        _gameMillis = gameMillis;
+        _remaining = gameMillis;
+        _lastNumMoves = Integer.MAX_VALUE;
+        _unlimited = false;
+    }
+
+    /**
+     * A manager whose deadlines never pass.
+     */
+    private TimeManager() {
+        _moveMillis = _gameMillis = _remaining = Long.MAX_VALUE;
+        _lastNumMoves = Integer.MAX_VALUE;
+        _unlimited = true;
+        _start = System.nanoTime();
+        _softDeadline = _hardDeadline = Long.MAX_VALUE;
+    }
+
+    /**
+     * Return a manager whose deadlines never pass, even across
+     * startMove, for searches limited only by depth, such as those that
+     * build an opening book.
+     */
+    static TimeManager unlimited() {
+        return new TimeManager();
+    }
+
+    /**
+     * Start the clock for a move from BOARD.  A board with fewer moves
+     * made than at my previous move means a new game, which gets a
+     * fresh budget.  An unlimited manager keeps its deadlines.
+     */
+    void startMove(Board board) {
+        if (_unlimited) {
+            _start = System.nanoTime();
+            return;
+        }
+        int numMoves = board.numMoves();
+        if (numMoves < _lastNumMoves) {
+            _remaining = _gameMillis;
+        }
+        _lastNumMoves = numMoves;
+        int movesLeft = Math.max(MIN_MOVES_LEFT,
+                                 (EXPECTED_PLIES - numMoves) / 2);
+        long share = _remaining / movesLeft;
+        long hard = Math.min(Math.min(_moveMillis, _remaining / 2),
+                             HARD_FACTOR * share);
+        hard = Math.max(0, hard - SAFETY_MILLIS);
+        _start = System.nanoTime();
+        _softDeadline = _start + Math.min(share, hard) * NANOS_PER_MILLI
+            / SOFT_DIVISOR;
+        _hardDeadline = _start + hard * NANOS_PER_MILLI;
+    }
+
+    /**
+     * Start the clock for thinking on the opponent's time, which lasts
+     * until the next startMove.  No deadline passes meanwhile, and none
+     * of the time is charged to the game budget.
+     */
+    void startPondering() {
+        _start = System.nanoTime();
+        _softDeadline = _hardDeadline = Long.MAX_VALUE;
+    }
+
+    /**
+     * Return true iff it is too late to start another search iteration.
+     */
+    boolean softExpired() {
+        return System.nanoTime() >= _softDeadline;
+    }
+
+    /**
+     * Return true iff the search in progress must stop.
+     */
+    boolean hardExpired() {
+        return System.nanoTime() >= _hardDeadline;
+    }
+
+    /**
+     * Stop the clock for the current move, charging its time to the
+     * game budget.
+     */
+    void endMove() {
+        _remaining = Math.max(0, _remaining - elapsedMillis());
+    }
+
+    /**
+     * Return the milliseconds since the current move was started.
+     */
+    long elapsedMillis() {
+        return (System.nanoTime() - _start) / NANOS_PER_MILLI;
+    }
+
+    /**
+     * A typical number of plies in a game; with the moves made so far
+     * it estimates how many more moves the budget must cover.
+     */
+    private static final int EXPECTED_PLIES = 80;
+    /**
+     * The fewest moves we assume are left to play.
+     */
+    private static final int MIN_MOVES_LEFT = 8;
+    /**
+     * How many times its share a single move may use when an iteration
+     * runs long.
+     */
+    private static final int HARD_FACTOR = 3;
+    /**
+     * The soft deadline is the share divided by this, since the next
+     * iteration usually takes several times as long as the last.
+     */
+    private static final int SOFT_DIVISOR = 2;
+    /**
+     * Margin left for unwinding the search and reporting the move.
+     */
+    private static final long SAFETY_MILLIS = 100;
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final long NANOS_PER_MILLI = 1_000_000;
+
+    /**
+     * Limits per move and per game, in milliseconds.
+     */
+    private final long _moveMillis, _gameMillis;
+    /**
+     * True iff this manager's deadlines never pass.
+     */
+    private final boolean _unlimited;
+    /**
+     * Milliseconds left in the game budget.
+     */
+    private long _remaining;
+    /**
+     * Board.numMoves() at my previous move.
+     */
+    private int _lastNumMoves;
+    /**
+     * System.nanoTime() at the start of the current move, and the soft
+     * and hard deadlines for it.
+     */
+    private long _start, _softDeadline, _hardDeadline;
+}
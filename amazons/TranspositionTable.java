@@ -0,0 +1,149 @@
+package amazons;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size table of search results keyed by Board.hash().  Each
+ * bucket holds two entries: the first is replaced only by results of
+ * at least the same depth, the second by every store that does not go
+ * into the first.  Entries live in preallocated long arrays, so probing
+ * and storing allocate nothing.
+ *
+ * Several threads may probe and store at once without locking.  Each
+ * entry's key is stored XORed with its data, so an entry torn by
+ * concurrent stores (key from one, data from another) fails to match
+ * on probe and is treated as absent.
+ *
+ * @author Roshan Lodha
+ */
+final class TranspositionTable {
+
+    /**
+     * Bound type of a stored score that is exact.
+     */
+    static final int EXACT = 1;
+    /**
+     * Bound type of a stored score that is a lower bound (the search
+     * failed high).
+     */
+    static final int LOWER = 2;
+    /**
+     * Bound type of a stored score that is an upper bound (the search
+     * failed low).
+     */
+    static final int UPPER = 3;
+
+    /**
+     * A table using at most MEGABYTES megabytes (at least one bucket).
+     */
+    TranspositionTable(int megabytes) {
+        long bytes = (long) megabytes << 20;
+        int buckets = (int) Math.min(Math.max(1, bytes / (2 * ENTRY_BYTES)),
+                                     MAX_BUCKETS);
+        buckets = Integer.highestOneBit(buckets);
+        _mask = buckets - 1;
+        _keys = new long[2 * buckets];
+        _data = new long[2 * buckets];
+    }
+
+    /**
+     * Remove all entries.
+     */
+    void clear() {
+        Arrays.fill(_keys, 0);
+        Arrays.fill(_data, 0);
+    }
+
+    /**
+     * Return the data stored for the position with Zobrist key KEY, or 0
+     * if there is none.  Decode it with move, score, depth, and bound.
+     */
+    long probe(long key) {
+        int i = 2 * ((int) key & _mask);
+        long data0 = _data[i], data1 = _data[i + 1];
+        if ((_keys[i] ^ data0) == key && data0 != 0) {
+            return data0;
+        } else if ((_keys[i + 1] ^ data1) == key && data1 != 0) {
+            return data1;
+        }
+        return 0;
+    }
+
+    /**
+     * Record that a search of DEPTH levels from the position with
+     * Zobrist key KEY produced SCORE, a bound of type BOUND (EXACT,
+     * LOWER, or UPPER), with best packed move MOVE (or 0 if none).
+     */
+    void store(long key, int move, int score, int depth, int bound) {
+        int i = 2 * ((int) key & _mask);
+        long data = ((long) score << SCORE_SHIFT)
+            | ((long) Math.min(depth, DEPTH_MASK) << DEPTH_SHIFT)
+            | ((long) bound << BOUND_SHIFT) | (move & MOVE_MASK);
+        long data0 = _data[i];
+        if ((_keys[i] ^ data0) == key || data0 == 0
+            || depth(data0) <= depth) {
+            _keys[i] = key ^ data;
+            _data[i] = data;
+        } else {
+            _keys[i + 1] = key ^ data;
+            _data[i + 1] = data;
+        }
+    }
+
+    /**
+     * Return the packed move in table data DATA (0 if none).
+     */
+    static int move(long data) {
+        return (int) (data & MOVE_MASK);
+    }
+
+    /**
+     * Return the score in table data DATA.
+     */
+    static int score(long data) {
+        return (int) (data >> SCORE_SHIFT);
+    }
+
+    /**
+     * Return the search depth in table data DATA.
+     */
+    static int depth(long data) {
+        return (int) (data >>> DEPTH_SHIFT) & DEPTH_MASK;
+    }
+
+    /**
+     * Return the bound type (EXACT, LOWER, or UPPER) in table data DATA.
+     */
+    static int bound(long data) {
+        return (int) (data >>> BOUND_SHIFT) & BOUND_MASK;
+    }
+
+    /**
+     * Layout of an entry's data: the packed move in the low 21 bits,
+     * then the bound type, the depth, and the score in the high 32 bits.
+     */
+    private static final int
+        MOVE_MASK = (1 << 21) - 1,
+        BOUND_SHIFT = 21, BOUND_MASK = 3,
+        DEPTH_SHIFT = 23, DEPTH_MASK = 255,
+        SCORE_SHIFT = 32;
+
+    /**
+     * Bytes of storage per entry (a key and its data).
+     */
+    private static final int ENTRY_BYTES = 16;
+    /**
+     * The largest number of buckets, limited by the maximum array size.
+     */
+    private static final int MAX_BUCKETS = 1 << 29;
+
+    /**
+     * Mask selecting a bucket number from a key.
+     */
+    private final int _mask;
+    /**
+     * The keys (XORed with their data) and data of the entries; bucket
+     * B holds entries 2B and 2B + 1.  An entry whose data is 0 is empty.
+     */
+    private final long[] _keys, _data;
+}
@@ -7,10 +7,16 @@ import static org.junit.Assert.*;
 
 import ucb.junit.textui;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The suite of all JUnit tests for the amazons package.
@@ -41,6 +47,25 @@ public class UnitTest {
         assertEquals(b.get(3, 5), EMPTY);
     }
 
+    /**
+     * Tests put, get and copy on squares either side of the boundary
+     * between the two words of the bitboard.
+     */
+    @Test
+    public void testBitboardWordBoundary() {
+        Board b = new Board();
+        b.put(SPEAR, Square.sq(63));
+        b.put(BLACK, Square.sq(64));
+        assertEquals(SPEAR, b.get(Square.sq(63)));
+        assertEquals(BLACK, b.get(Square.sq(64)));
+        Board c = new Board(b);
+        assertEquals(SPEAR, c.get(3, 6));
+        assertEquals(BLACK, c.get(4, 6));
+        c.put(EMPTY, Square.sq(64));
+        assertEquals(EMPTY, c.get(4, 6));
+        assertEquals(BLACK, b.get(4, 6));
+    }
+
     /**
      * Tests proper identification of legal/illegal queen moves.
      */
@@ -67,6 +92,26 @@ public class UnitTest {
         assertEquals(7, Square.sq(1, 1).direction(Square.sq(0, 2)));
     }
 
+    @Test
+    public void testRays() {
+        int c3 = Square.sq("c3").index();
+        assertArrayEquals(new int[] { Square.sq("d4").index(),
+            Square.sq("e5").index(), Square.sq("f6").index(),
+            Square.sq("g7").index(), Square.sq("h8").index(),
+            Square.sq("i9").index(), Square.sq("j10").index() },
+            Square.ray(c3, 1));
+        assertEquals(2, Square.ray(c3, 4).length);
+        assertEquals(Square.sq("c1"), Square.sq("c3").queenMove(4, 2));
+        assertNull(Square.sq("c3").queenMove(4, 3));
+        int d4 = Square.sq("d4").index(), h8 = Square.sq("h8").index();
+        assertEquals(1L << Square.sq("g7").index(),
+                     Square.between(c3, h8, 1));
+        assertEquals(Long.bitCount(Square.between(c3, h8, 0)), 3);
+        assertEquals(0, Square.between(c3, d4, 0) | Square.between(c3, d4, 1));
+        int b5 = Square.sq("b5").index();
+        assertEquals(0, Square.between(c3, b5, 0) | Square.between(c3, b5, 1));
+    }
+
     @Test
     public void testSquare() {
         assertEquals("a4", Square.sq("a4").toString());
@@ -115,6 +160,29 @@ public class UnitTest {
         assertEquals(WHITE, b.turn());
     }
 
+    @Test
+    public void testHash() {
+        Board b = new Board();
+        long initial = b.hash();
+        b.makeMove(Square.sq("a4"), Square.sq("a5"), Square.sq("b5"));
+        b.makeMove(Square.sq("a7"), Square.sq("a6"), Square.sq("b6"));
+        b.makeMove(Square.sq("d1"), Square.sq("d2"), Square.sq("e2"));
+        long transposed = b.hash();
+        assertEquals(transposed, new Board(b).hash());
+        b.undo();
+        b.undo();
+        b.undo();
+        assertEquals(initial, b.hash());
+        b.makeMove(Square.sq("d1"), Square.sq("d2"), Square.sq("e2"));
+        b.makeMove(Square.sq("a7"), Square.sq("a6"), Square.sq("b6"));
+        b.makeMove(Square.sq("a4"), Square.sq("a5"), Square.sq("b5"));
+        assertEquals(transposed, b.hash());
+        b.put(SPEAR, Square.sq("j1"));
+        assertNotEquals(transposed, b.hash());
+        b.put(EMPTY, Square.sq("j1"));
+        assertEquals(transposed, b.hash());
+    }
+
     /**
      * Tests toString for initial board state and a smiling board state. :)
      */
@@ -223,12 +291,667 @@ public class UnitTest {
         assertEquals(2176, moves.size());
     }
 
+    @Test
+    public void testGenerateMoves() {
+        Board b = new Board();
+        buildBoard(b, LEGALMOVESTESTBOARD);
+        int[] buffer = new int[Board.MAX_MOVES];
+        int n = b.generateMoves(WHITE, buffer);
+        assertEquals(LEGALMOVESTESTMOVES.size(), n);
+        for (int i = 0; i < n; i += 1) {
+            Move m = Move.mv(buffer[i]);
+            assertTrue(LEGALMOVESTESTMOVES.contains(m));
+            assertEquals(buffer[i], m.packed());
+        }
+        assertEquals(2176, new Board().generateMoves(WHITE, buffer));
+    }
+
+    @Test
+    public void testStagedMoves() {
+        Board b = new Board();
+        buildBoard(b, WINNERBOARD);
+        int[] all = new int[Board.MAX_MOVES];
+        int n = b.generateMoves(WHITE, all);
+        int[] queenMoves = new int[Board.MAX_QUEEN_MOVES];
+        int[] spears = new int[Board.MAX_SPEARS];
+        int nq = b.generateQueenMoves(WHITE, queenMoves);
+        long hash = b.hash();
+        int k = 0;
+        for (int q = 0; q < nq; q += 1) {
+            int ns = b.generateSpears(queenMoves[q], spears);
+            b.makeHalfMove(queenMoves[q]);
+            assertEquals(WHITE, b.get(Move.to(queenMoves[q])));
+            assertEquals(ns, b.generateSpears(queenMoves[q], spears));
+            b.undoHalfMove(queenMoves[q]);
+            for (int i = 0; i < ns; i += 1, k += 1) {
+                assertEquals(all[k], spears[i]);
+            }
+        }
+        assertEquals(n, k);
+        assertEquals(hash, b.hash());
+    }
+
+    @Test
+    public void testCountMoves() {
+        Board b = new Board();
+        assertEquals(2176, b.countMoves(WHITE));
+        assertEquals(2176, b.countMoves(BLACK));
+        buildBoard(b, WINNERBOARD);
+        int[] buffer = new int[Board.MAX_MOVES];
+        assertEquals(b.generateMoves(WHITE, buffer), b.countMoves(WHITE));
+        assertEquals(b.generateMoves(BLACK, buffer), b.countMoves(BLACK));
+        buildBoard(b, LEGALMOVESTESTBOARD);
+        assertEquals(LEGALMOVESTESTMOVES.size(), b.countMoves(WHITE));
+    }
+
+    @Test
+    public void testMoveTable() {
+        Move m = Move.mv(Square.sq("a4"), Square.sq("c6"), Square.sq("a4"));
+        assertSame(m, Move.mv("a4-c6(a4)"));
+        assertSame(m, Move.mv(m.packed()));
+        assertEquals("a4-c6(a4)", m.toString());
+        assertNull(Move.mv(Square.sq("a4"), Square.sq("b6"),
+                           Square.sq("b7")));
+        assertNull(Move.mv(Square.sq("a4"), Square.sq("a5"),
+                           Square.sq("c6")));
+    }
+
+    @Test
+    public void testParseMove() {
+        int m = Move.pack(Square.sq("a10").index(), Square.sq("j1").index(),
+                          Square.sq("a1").index());
+        assertEquals(m, Move.parse("a10-j1(a1)"));
+        assertEquals(m, Move.parse("a10 j1\ta1"));
+        assertEquals(m, Move.parse(new StringBuilder("a10  j1 a1")));
+        assertEquals(-1, Move.parse("a10-j1(a1) "));
+        assertEquals(-1, Move.parse("a10j1 a1"));
+        assertEquals(-1, Move.parse("a10-j1 a1"));
+        assertEquals(-1, Move.parse("a11-j1(a1)"));
+        assertEquals(-1, Move.parse("k1-j1(a1)"));
+        assertEquals(-1, Move.parse("a1-a2(a"));
+        assertTrue(Move.isGrammaticalMove("a1 c2 d3"));
+        assertNull(Move.mv("a1 c2 d3"));
+    }
+
+    @Test
+    public void testTranspositionTable() {
+        TranspositionTable table = new TranspositionTable(1);
+        long key = 0x123456789L;
+        assertEquals(0, table.probe(key));
+        int move = Move.mv("a4-a5(b5)").packed();
+        table.store(key, move, -1234, 3, TranspositionTable.LOWER);
+        long data = table.probe(key);
+        assertEquals(move, TranspositionTable.move(data));
+        assertEquals(-1234, TranspositionTable.score(data));
+        assertEquals(3, TranspositionTable.depth(data));
+        assertEquals(TranspositionTable.LOWER, TranspositionTable.bound(data));
+        long other = key + (1L << 40);
+        table.store(other, 0, 7, 1, TranspositionTable.EXACT);
+        assertEquals(3, TranspositionTable.depth(table.probe(key)));
+        assertEquals(7, TranspositionTable.score(table.probe(other)));
+        table.clear();
+        assertEquals(0, table.probe(key));
+    }
+
+    @Test
+    public void testEvalCache() {
+        EvalCache cache = new EvalCache(1);
+        long key = 0x123456789L;
+        assertEquals(0, cache.probe(key));
+        cache.store(key, -1234);
+        assertEquals(-1234, EvalCache.value(cache.probe(key)));
+        cache.store(key, 0);
+        assertNotEquals(0, cache.probe(key));
+        assertEquals(0, EvalCache.value(cache.probe(key)));
+        long other = key + (1L << 40);
+        cache.store(other, 7);
+        assertEquals(0, cache.probe(key));
+        assertEquals(7, EvalCache.value(cache.probe(other)));
+        cache.clear();
+        assertEquals(0, cache.probe(other));
+
+        Board b = new Board();
+        TimeManager clock = new TimeManager(600000, 6000000);
+        clock.startMove(b);
+        Searcher plain = new Searcher(new TranspositionTable(1), clock);
+        Searcher cached = new Searcher(new TranspositionTable(1), clock);
+        cached.setEvalCache(new EvalCache(1));
+        plain.setPosition(b, 1);
+        cached.setPosition(b, 1);
+        assertEquals(plain.search(2), cached.search(2));
+        assertEquals(plain.bestMove(), cached.bestMove());
+    }
+
+    @Test
+    public void testSearchStats() {
+        Board b = new Board();
+        TimeManager clock = new TimeManager(600000, 6000000);
+        clock.startMove(b);
+        Searcher searcher = new Searcher(new TranspositionTable(1), clock);
+        searcher.setPosition(b, 1);
+        SearchStats stats = new SearchStats();
+        for (int depth = 1; depth <= 2; depth += 1) {
+            searcher.search(depth);
+            stats.finishDepth(depth, searcher.nodes());
+        }
+        stats.add(searcher.stats());
+        stats.finish(10);
+        assertEquals(searcher.nodes(), stats.nodes());
+        assertEquals(2, stats.depth());
+        assertTrue(stats.evals() > 0 && stats.evals() < stats.nodes());
+        assertTrue(stats.hitRate() > 0 && stats.hitRate() <= 1);
+        assertTrue(stats.firstCutoffRate() > 0
+                   && stats.firstCutoffRate() <= 1);
+        assertTrue(stats.branchingFactor() > 1);
+        assertEquals(stats.nodes() * 100, stats.nodesPerSecond());
+        assertTrue(stats.toString().contains(" 2:2ms"));
+        searcher.setPosition(b, 1);
+        assertEquals(0, searcher.stats().nodes());
+    }
+
+    @Test
+    public void testTimeManager() {
+        Board b = new Board();
+        TimeManager generous = new TimeManager(60000, 600000);
+        generous.startMove(b);
+        assertFalse(generous.softExpired());
+        assertFalse(generous.hardExpired());
+        TimeManager broke = new TimeManager(60000, 0);
+        broke.startMove(b);
+        assertTrue(broke.softExpired());
+        assertTrue(broke.hardExpired());
+        broke.startPondering();
+        assertFalse(broke.hardExpired());
+        TimeManager unlimited = TimeManager.unlimited();
+        assertFalse(unlimited.softExpired());
+        assertFalse(unlimited.hardExpired());
+        unlimited.startMove(b);
+        assertFalse(unlimited.softExpired());
+        assertFalse(unlimited.hardExpired());
+        unlimited.endMove();
+        unlimited.startMove(b);
+        assertFalse(unlimited.hardExpired());
+    }
+
+    @Test
+    public void testSearcher() throws InterruptedException {
+        Board b = new Board();
+        for (int i = 0; i < Board.SIZE * Board.SIZE; i += 1) {
+            b.put(SPEAR, Square.sq(i));
+        }
+        b.put(WHITE, Square.sq("a1"));
+        b.put(EMPTY, Square.sq("a2"));
+        b.put(EMPTY, Square.sq("b1"));
+        b.put(BLACK, Square.sq("c1"));
+        TranspositionTable table = new TranspositionTable(1);
+        TimeManager clock = new TimeManager(60000, 600000);
+        clock.startMove(b);
+        Searcher helper = new Searcher(table, clock);
+        helper.setPosition(b, 2);
+        Thread thread = new Thread(helper);
+        thread.start();
+        Searcher main = new Searcher(table, clock);
+        main.setPosition(b, 1);
+        assertEquals(Searcher.WINNING_VALUE, main.search(1));
+        helper.stop();
+        thread.join();
+        b.makeMove(main.bestMove());
+        assertEquals(WHITE, b.winner());
+    }
+
+    @Test
+    public void testYbwSearcher() {
+        Board b = new Board();
+        buildBoard(b, WINNERBOARD);
+        TimeManager clock = new TimeManager(600000, 6000000);
+        clock.startMove(b);
+        Searcher serial = new Searcher(new TranspositionTable(1), clock);
+        serial.setPosition(b, 1);
+        YbwSearcher parallel =
+            new YbwSearcher(new ForkJoinPool(2), new TranspositionTable(1),
+                            null, null, clock);
+        assertEquals(serial.search(3), parallel.search(b, 3));
+        assertFalse(parallel.aborted());
+        assertTrue(b.isLegal(parallel.bestMove()));
+        b.makeMove(parallel.bestMove());
+        serial.setPosition(b, 1);
+        assertEquals(serial.search(2), parallel.search(b, 2));
+        parallel.shutdown();
+    }
+
+    @Test
+    public void testAspiration() {
+        Board b = new Board();
+        buildBoard(b, WINNERBOARD);
+        TimeManager clock = new TimeManager(600000, 6000000);
+        clock.startMove(b);
+        Searcher deepening = new Searcher(new TranspositionTable(1), clock);
+        deepening.setPosition(b, 1);
+        int value = 0;
+        for (int depth = 1; depth <= 3; depth += 1) {
+            value = deepening.search(depth);
+        }
+        Searcher direct = new Searcher(new TranspositionTable(1), clock);
+        direct.setPosition(b, 1);
+        assertEquals(direct.search(3), value);
+        assertTrue(b.isLegal(deepening.bestMove()));
+    }
+
+    @Test
+    public void testMctsPlayer() throws InterruptedException {
+        MctsPlayer template = new MctsPlayer();
+        template.setTimeLimits(1, 10);
+        template.setThreads(2);
+        Controller controller =
+            new Controller(new NullView(), null, new TextReporter(),
+                           new TextPlayer(), template);
+        Board b = controller.board();
+        for (int i = 0; i < Board.SIZE * Board.SIZE; i += 1) {
+            b.put(SPEAR, Square.sq(i));
+        }
+        for (String sq : new String[] { "b2", "c4", "d1", "d2", "d3",
+                                        "d4" }) {
+            b.put(EMPTY, Square.sq(sq));
+        }
+        b.put(WHITE, Square.sq("c3"));
+        b.put(BLACK, Square.sq("c2"));
+        MctsPlayer player = (MctsPlayer) template.create(WHITE, controller);
+        assertEquals("c3-d3(c3)", player.myMove());
+        SearchStats stats = player.searchStats();
+        assertTrue(stats.playouts() > 0);
+        assertEquals(player.playouts(), stats.playouts());
+        assertTrue(stats.toString().startsWith("playouts "));
+        assertFalse(threadsNamed("amazons-mcts").isEmpty());
+        player.stopThinking();
+        for (Thread thread : threadsNamed("amazons-mcts")) {
+            thread.join(5000);
+            assertFalse(thread.isAlive());
+        }
+    }
+
+    @Test
+    public void testMoveOrdering() {
+        Board b = new Board();
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int i = 0; i < 40; i += 1) {
+            int n = b.generateMoves(b.turn(), moves);
+            b.makeMove(moves[i * 7919 % n]);
+        }
+        int n = b.generateQueenMoves(b.turn(), moves);
+        int favorite = moves[n - 1];
+        int[] history = new int[Board.SIZE * Board.SIZE * Board.SIZE
+                                * Board.SIZE];
+        history[Move.from(favorite) * Board.SIZE * Board.SIZE
+                + Move.to(favorite)] = 1;
+        Searcher.orderQueenMoves(b, moves, n, new long[n], history, true);
+        assertEquals(favorite, moves[0]);
+
+        TimeManager clock = new TimeManager(600000, 6000000);
+        clock.startMove(b);
+        Searcher searcher = new Searcher(new TranspositionTable(1), clock);
+        searcher.setSelective(true);
+        searcher.setPosition(b, 1);
+        for (int depth = 1; depth <= 4; depth += 1) {
+            searcher.search(depth);
+        }
+        assertTrue(searcher.stats().firstCutoffRate() > 0.5);
+        for (int ply = 1; ply <= 2; ply += 1) {
+            for (int i = 0; i < 2; i += 1) {
+                int killer = searcher.killer(ply, i);
+                assertTrue(killer != 0);
+                Piece owner = b.get(Square.sq(Move.from(killer)));
+                assertEquals(ply == 1, owner == b.turn().opponent());
+            }
+        }
+        searcher.age();
+        assertEquals(0, searcher.killer(1, 0));
+    }
+
+    @Test
+    public void testStopThinking() throws InterruptedException {
+        AI template = new AI();
+        template.setHashSize(1);
+        template.setTimeLimits(0.2, 10);
+        template.setThreads(3);
+        Controller controller =
+            new Controller(new NullView(), null, new TextReporter(),
+                           new TextPlayer(), template);
+        Board b = controller.board();
+        Player player = template.create(WHITE, controller);
+        b.makeMove(Move.mv(player.myMove()));
+        assertFalse(threadsNamed("amazons-search").isEmpty());
+        player.stopThinking();
+        for (Thread thread : threadsNamed("amazons-search")) {
+            thread.join(5000);
+            assertFalse(thread.isAlive());
+        }
+        Player opponent = template.create(BLACK, controller);
+        b.makeMove(Move.mv(opponent.myMove()));
+        assertTrue(b.isLegal(Move.mv(player.myMove())));
+        player.stopThinking();
+        opponent.stopThinking();
+    }
+
+    /**
+     * Return the live threads named NAME.
+     */
+    private static List<Thread> threadsNamed(String name) {
+        List<Thread> result = new ArrayList<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals(name) && thread.isAlive()) {
+                result.add(thread);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testPondering() throws InterruptedException {
+        AI template = new AI();
+        template.setHashSize(4);
+        template.setTimeLimits(0.5, 10);
+        template.setPondering(true);
+        Controller controller =
+            new Controller(new NullView(), null, new TextReporter(),
+                           new TextPlayer(), template);
+        Board b = controller.board();
+        AI player = (AI) template.create(WHITE, controller);
+        b.makeMove(Move.mv(player.myMove()));
+        int reply = player.predictedReply();
+        assertTrue(reply != 0);
+        Thread.sleep(500);
+        b.makeMove(reply);
+        int pondered = player.stopPondering();
+        assertTrue(b.isLegal(pondered));
+        assertEquals(0, player.predictedReply());
+        b.makeMove(Move.mv(player.myMove()));
+        reply = player.predictedReply();
+        assertTrue(reply != 0);
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = b.generateMoves(b.turn(), moves);
+        b.makeMove(moves[0] != reply ? moves[0] : moves[n - 1]);
+        assertEquals(0, player.stopPondering());
+        player.stopThinking();
+    }
+
+    @Test
+    public void testSelectiveSearch() {
+        Board b = new Board();
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int i = 0; i < 40; i += 1) {
+            int n = b.generateMoves(b.turn(), moves);
+            b.makeMove(moves[i * 7919 % n]);
+        }
+        TimeManager clock = new TimeManager(600000, 6000000);
+        clock.startMove(b);
+        Searcher exact = new Searcher(new TranspositionTable(1), clock);
+        Searcher selective = new Searcher(new TranspositionTable(1), clock);
+        selective.setSelective(true);
+        exact.setPosition(b, 1);
+        selective.setPosition(b, 1);
+        for (int depth = 1; depth <= 3; depth += 1) {
+            exact.search(depth);
+            selective.search(depth);
+        }
+        assertTrue(selective.nodes() < exact.nodes());
+        assertTrue(b.isLegal(selective.bestMove()));
+    }
+
+    @Test
+    public void testRegions() {
+        Board b = new Board();
+        assertEquals(1, b.regions().size());
+        assertTrue(b.regions().get(0).isShared());
+        for (int i = 0; i < Board.SIZE * Board.SIZE; i += 1) {
+            b.put(SPEAR, Square.sq(i));
+        }
+        b.put(WHITE, Square.sq("b1"));
+        b.put(BLACK, Square.sq("j10"));
+        for (String s : new String[] { "a1", "c1", "d1", "j9", "i10",
+                                       "e5" }) {
+            b.put(EMPTY, Square.sq(s));
+        }
+        List<Region> regions = b.regions();
+        assertEquals(3, regions.size());
+        int owned = 0;
+        for (Region region : regions) {
+            assertFalse(region.isShared());
+            if (region.owner() == WHITE) {
+                assertEquals(3, region.size());
+                owned += 1;
+            } else if (region.owner() == BLACK) {
+                assertEquals(2, region.size());
+                owned += 1;
+            } else {
+                assertTrue(region.isDead());
+                assertEquals(1, region.size());
+            }
+        }
+        assertEquals(2, owned);
+        assertTrue(Endgame.separated(b));
+        b.put(WHITE, Square.sq("e6"));
+        assertTrue(Endgame.separated(b));
+        b.put(BLACK, Square.sq("e4"));
+        assertFalse(Endgame.separated(b));
+        b.put(SPEAR, Square.sq("e4"));
+        b.put(EMPTY, Square.sq("g8"));
+        b.put(BLACK, Square.sq("f7"));
+        assertFalse(Endgame.separated(b));
+        b.put(SPEAR, Square.sq("f7"));
+        assertTrue(Endgame.separated(b));
+
+        int[] moves = new int[Board.MAX_MOVES];
+        Random random = new Random(61);
+        b = new Board();
+        while (b.winner() == null) {
+            boolean shared = false;
+            for (Region region : b.regions()) {
+                shared |= region.isShared();
+            }
+            assertEquals(!shared, b.separated());
+            int n = b.generateMoves(b.turn(), moves);
+            b.makeMove(moves[random.nextInt(n)]);
+        }
+    }
+
+    @Test
+    public void testEndgameMoves() {
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int seed : new int[] { 2, 5 }) {
+            Board b = new Board();
+            Random random = new Random(seed);
+            while (!Endgame.separated(b)) {
+                int n = b.generateMoves(b.turn(), moves);
+                b.makeMove(moves[random.nextInt(n)]);
+            }
+            while (b.winner() == null) {
+                Piece side = b.turn();
+                int before = Endgame.moves(b, side, null),
+                    move = Endgame.bestMove(b, null);
+                assertTrue(before > 0);
+                assertTrue(b.isLegal(move));
+                b.makeMove(move);
+                assertEquals(before - 1, Endgame.moves(b, side, null));
+            }
+        }
+    }
+
+    @Test
+    public void testEndgame() {
+        Board b = new Board();
+        for (int i = 0; i < Board.SIZE * Board.SIZE; i += 1) {
+            b.put(SPEAR, Square.sq(i));
+        }
+        b.put(WHITE, Square.sq("b1"));
+        b.put(BLACK, Square.sq("j10"));
+        for (String s : new String[] { "a1", "c1", "d1", "j9", "i10" }) {
+            b.put(EMPTY, Square.sq(s));
+        }
+        assertEquals(3, Endgame.moves(b, WHITE, null));
+        assertEquals(2, Endgame.moves(b, BLACK, null));
+        int move = Endgame.bestMove(b, null);
+        assertTrue(b.isLegal(move));
+        b.makeMove(move);
+        assertEquals(2, Endgame.moves(b, WHITE, null));
+        b.put(EMPTY, Square.sq("a10"));
+        b.put(WHITE, Square.sq("b10"));
+        b.put(EMPTY, Square.sq("c10"));
+        assertEquals(4, Endgame.moves(b, WHITE, null));
+    }
+
+    @Test
+    public void testTablebase() throws IOException {
+        Tablebase table = Tablebase.build(2);
+        File file = File.createTempFile("amazons", ".tb");
+        file.deleteOnExit();
+        table.save(file.getPath());
+        Tablebase mapped = Tablebase.load(file.getPath());
+        Board b = new Board();
+        for (int i = 0; i < Board.SIZE * Board.SIZE; i += 1) {
+            b.put(SPEAR, Square.sq(i));
+        }
+        b.put(WHITE, Square.sq("g5"));
+        b.put(BLACK, Square.sq("a1"));
+        for (String s : new String[] { "f5", "h5", "i5", "h6", "g4",
+                                       "b1", "a2" }) {
+            b.put(EMPTY, Square.sq(s));
+        }
+        for (Region region : b.regions()) {
+            Piece owner = region.owner();
+            assertEquals(Endgame.solve(region, owner, null),
+                         mapped.probe(region, owner));
+        }
+        assertEquals(5, Endgame.moves(b, WHITE, mapped));
+        assertEquals(WHITE, mapped.winner(b));
+        b.put(EMPTY, Square.sq("j5"));
+        for (Region region : b.regions()) {
+            if (region.owner() == WHITE) {
+                assertEquals(-1, mapped.probe(region, WHITE));
+            }
+        }
+        assertNull(mapped.winner(b));
+        try {
+            Tablebase.load(UnitTest.class.getResource("UnitTest.class")
+                           .getPath());
+            fail("expected a bad tablebase to be rejected");
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testOpeningBook() throws IOException {
+        OpeningBook book = OpeningBook.build(2, 2, 2);
+        File file = File.createTempFile("amazons", ".book");
+        file.deleteOnExit();
+        book.save(file.getPath());
+        OpeningBook mapped = OpeningBook.load(file.getPath());
+        assertEquals(book.size(), mapped.size());
+        Board b = new Board();
+        Random random = new Random(61);
+        int first = mapped.move(b, random);
+        assertTrue(b.isLegal(first));
+        int second = mapped.move(b, random);
+        assertTrue(b.isLegal(second));
+        b.makeMove(Square.sq("a4"), Square.sq("a5"), Square.sq("a4"));
+        assertEquals(0, mapped.move(b, random));
+    }
+
+    @Test
+    public void testEvaluator() {
+        Board b = new Board();
+        assertEquals(0, Evaluator.evaluate(b));
+        for (int i = 0; i < Board.SIZE * Board.SIZE; i += 1) {
+            b.put(SPEAR, Square.sq(i));
+        }
+        b.put(WHITE, Square.sq("a1"));
+        b.put(BLACK, Square.sq("j10"));
+        for (String s : new String[] { "b1", "c1", "c2", "d1", "j9" }) {
+            b.put(EMPTY, Square.sq(s));
+        }
+        assertEquals(5 * (4 - 1), Evaluator.territory(b, false));
+        assertEquals(5 * (4 - 1), Evaluator.territory(b, true));
+        b.put(BLACK, Square.sq("e2"));
+        assertEquals(5 * (1 - 2) + 2, Evaluator.territory(b, false));
+        assertEquals(5 * (2 - 1) + 2, Evaluator.territory(b, true));
+    }
+
     @Test
     public void testWinner() {
         Board b = new Board();
         buildBoard(b, WINNERBOARD);
         b.makeMove(Square.sq("a7"), Square.sq("a6"), Square.sq("a7"));
         assertEquals(WHITE, b.winner());
+        assertFalse(b.hasMoves(BLACK));
+        b.undo();
+        assertNull(b.winner());
+        assertTrue(b.hasMoves(BLACK));
+    }
+
+    @Test
+    public void testPutLiberties() {
+        Random random = new Random(3);
+        Board b = new Board();
+        Piece[] pieces = { EMPTY, WHITE, BLACK, SPEAR };
+        for (int i = 0; i < 2000; i += 1) {
+            b.put(pieces[random.nextInt(4)],
+                  Square.sq(random.nextInt(Board.SIZE * Board.SIZE)));
+            for (Piece side : new Piece[] { WHITE, BLACK }) {
+                boolean free = false;
+                for (int k = 0; k < Board.SIZE * Board.SIZE; k += 1) {
+                    Square s = Square.sq(k);
+                    for (int dir = 0; dir < 8 && b.get(s) == side; dir += 1) {
+                        Square n = s.queenMove(dir, 1);
+                        free |= n != null && b.get(n) == EMPTY;
+                    }
+                }
+                assertEquals(free, b.hasMoves(side));
+            }
+        }
+        Board c = new Board();
+        c.makeMove(Square.sq("a4"), Square.sq("a5"), Square.sq("b5"));
+        c.copy(b);
+        assertEquals(b.toString(), c.toString());
+        assertEquals(b.hash(), c.hash());
+        assertEquals(0, c.numMoves());
+    }
+
+    @Test
+    public void testLongHistory() {
+        Board b = new Board();
+        long start = b.hash();
+        int d1 = Square.sq("d1").index(), d2 = Square.sq("d2").index(),
+            d9 = Square.sq("d9").index(), d10 = Square.sq("d10").index();
+        int[] cycle = {
+            Move.pack(d1, d2, d1), Move.pack(d10, d9, d10),
+            Move.pack(d2, d1, d1), Move.pack(d9, d10, d10),
+        };
+        int[] queenMoves = new int[Board.MAX_QUEEN_MOVES];
+        int plies = 0;
+        while (plies <= 120) {
+            for (int move : cycle) {
+                long hash = b.hash();
+                int n = b.generateQueenMoves(b.turn(), queenMoves);
+                for (int i = 0; i < n; i += 1) {
+                    b.makeHalfMove(queenMoves[i]);
+                    b.undoHalfMove(queenMoves[i]);
+                    assertEquals(hash, b.hash());
+                }
+                b.makeMove(move);
+                plies += 1;
+                assertEquals(plies, b.numMoves());
+                assertEquals(move, b.lastMove());
+            }
+            assertEquals(start, b.hash());
+        }
+        while (plies > 0) {
+            assertEquals(cycle[(plies - 1) % 4], b.lastMove());
+            b.undo();
+            plies -= 1;
+            assertEquals(plies, b.numMoves());
+        }
+        assertEquals(start, b.hash());
+        assertEquals(0, b.lastMove());
     }
 
     private void buildBoard(Board b, Piece[][] target) {
@@ -0,0 +1,400 @@
+package amazons;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import static amazons.Piece.*;
+
+/**
+ * A parallel alpha-beta search using Young Brothers Wait on a
+ * ForkJoinPool.  At each node deep enough to be worth splitting, the
+ * spear throws of the first (best ordered) half-move are searched
+ * serially to establish a bound; the remaining half-moves are then
+ * searched as parallel subtasks that share the node's alpha-beta
+ * window.  A subtask that produces a cutoff cancels its siblings, and
+ * everything below them, cooperatively.  Nodes too shallow to split
+ * are searched by a per-thread Searcher.
+ *
+ * @author Roshan Lodha
+ */
+final class YbwSearcher {
+
+    /**
+     * A search running on POOL, caching results in TABLE and
+     * evaluations in EVALCACHE (if not null), scoring positions in
+     * TABLEBASE (if not null) exactly, and stopping when CLOCK's hard
+     * deadline passes.
+     */
+    YbwSearcher(ForkJoinPool pool, TranspositionTable table,
+                EvalCache evalCache, Tablebase tablebase,
+                TimeManager clock) {
+        _pool = pool;
+        _table = table;
+        _clock = clock;
+        _searchers = ThreadLocal.withInitial(() -> {
+            Searcher searcher = new Searcher(table, clock);
+            searcher.setTablebase(tablebase);
+            searcher.setEvalCache(evalCache);
+            synchronized (_allSearchers) {
+                _allSearchers.add(searcher);
+            }
+            return searcher;
+        });
+    }
+
+    /**
+     * Search BOARD to DEPTH levels, returning its value (positive for
+     * white) and recording its best move for bestMove, unless the search
+     * is abandoned.  BOARD is not modified.  The first search of a new
+     * position ages my threads' move ordering, as setPosition does for
+     * a serial Searcher.
+     */
+    int search(Board board, int depth) {
+        int sense = board.turn() == WHITE ? 1 : -1;
+        if (board.hash() != _rootKey || board.numMoves() != _rootMoves) {
+            _rootKey = board.hash();
+            _rootMoves = board.numMoves();
+            synchronized (_allSearchers) {
+                for (Searcher searcher : _allSearchers) {
+                    searcher.age();
+                }
+            }
+        }
+        Node root = new Node(null, new Board(board), depth,
+                             -Searcher.INFTY, Searcher.INFTY);
+        int value = _pool.invoke(ForkJoinTask.adapt(root::search));
+        _aborted = _clock.hardExpired();
+        if (!_aborted) {
+            _bestMove = root._bestMove;
+        }
+        return sense * value;
+    }
+
+    /**
+     * Return true iff the last search was abandoned before finishing.
+     */
+    boolean aborted() {
+        return _aborted;
+    }
+
+    /**
+     * Return the packed best move found by the last search that
+     * finished, or 0 if none has.
+     */
+    int bestMove() {
+        return _bestMove;
+    }
+
+    /**
+     * Return the combined counts of my threads' serial searches since
+     * the last clearStats.  Nodes that are split among threads are not
+     * counted.  Call only between searches.
+     */
+    SearchStats stats() {
+        SearchStats total = new SearchStats();
+        synchronized (_allSearchers) {
+            for (Searcher searcher : _allSearchers) {
+                total.add(searcher.stats());
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Stop my threads.  I may not be used afterwards.
+     */
+    void shutdown() {
+        _pool.shutdownNow();
+    }
+
+    /**
+     * Reset the counts reported by stats.  Call only between searches.
+     */
+    void clearStats() {
+        synchronized (_allSearchers) {
+            for (Searcher searcher : _allSearchers) {
+                searcher.stats().clear();
+            }
+        }
+    }
+
+    /**
+     * A position being searched, with the window and best result so far
+     * shared by all the threads searching its children.  Values are
+     * relative to the side to move, as in Searcher.
+     */
+    private final class Node {
+
+        /**
+         * A child of PARENT (null for the root) whose position is BOARD,
+         * to be searched to DEPTH levels with window ALPHA..BETA.
+         */
+        Node(Node parent, Board board, int depth, int alpha, int beta) {
+            _parent = parent;
+            _board = board;
+            _depth = depth;
+            _alpha = alpha;
+            _beta = beta;
+            _best = -Searcher.INFTY;
+        }
+
+        /**
+         * Return true iff my result is no longer wanted: the search is
+         * out of time, or some ancestor has had a cutoff.
+         */
+        boolean abandoned() {
+            if (_clock.hardExpired()) {
+                return true;
+            }
+            for (Node n = _parent; n != null; n = n._parent) {
+                if (n._cutoff) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Return true iff no more of my children need searching.
+         */
+        boolean finished() {
+            return _cutoff || abandoned();
+        }
+
+        /**
+         * Record that child move MOVE has value VALUE, narrowing my window
+         * and noting a cutoff if it closes.
+         */
+        synchronized void record(int move, int value) {
+            if (value > _best) {
+                _best = value;
+                _bestMove = move;
+            }
+            _alpha = Math.max(_alpha, value);
+            if (_alpha >= _beta) {
+                _cutoff = true;
+            }
+        }
+
+        /**
+         * Search me, returning my value, or a meaningless value if I am
+         * abandoned.
+         */
+        int search() {
+            if (abandoned()) {
+                return 0;
+            }
+            if ((_parent != null && _depth < MIN_SPLIT_DEPTH)
+                || _board.winner() != null) {
+                return _searchers.get().search(_board, _depth, _alpha, _beta,
+                                               this::abandoned);
+            }
+            long key = _board.hash();
+            long entry = _table.probe(key);
+            int hashMove = 0;
+            if (entry != 0) {
+                hashMove = TranspositionTable.move(entry);
+                if (!_board.isLegal(hashMove)) {
+                    hashMove = 0;
+                } else if (_parent != null
+                           && TranspositionTable.depth(entry) >= _depth) {
+                    int score = TranspositionTable.score(entry);
+                    switch (TranspositionTable.bound(entry)) {
+                    case TranspositionTable.EXACT:
+                        return score;
+                    case TranspositionTable.LOWER:
+                        _alpha = Math.max(_alpha, score);
+                        break;
+                    default:
+                        _beta = Math.min(_beta, score);
+                        break;
+                    }
+                    if (_alpha >= _beta) {
+                        return score;
+                    }
+                }
+            }
+            int alpha0 = _alpha;
+            int[] queenMoves = new int[Board.MAX_QUEEN_MOVES];
+            int numQueenMoves =
+                _board.generateQueenMoves(_board.turn(), queenMoves);
+            Searcher.orderQueenMoves(_board, queenMoves, numQueenMoves,
+                                     new long[Board.MAX_QUEEN_MOVES],
+                                     null, true);
+            if (hashMove != 0) {
+                Searcher.toFront(queenMoves, numQueenMoves,
+                                 Move.pack(Move.from(hashMove),
+                                           Move.to(hashMove), 0));
+            }
+
+            new Brothers(this, queenMoves[0], hashMove, true)
+                .searchOn(_board);
+            if (!finished()) {
+                List<Brothers> young = new ArrayList<>(numQueenMoves - 1);
+                for (int q = 1; q < numQueenMoves; q += 1) {
+                    young.add(new Brothers(this, queenMoves[q], 0, false));
+                }
+                ForkJoinTask.invokeAll(young);
+            }
+
+            if (abandoned()) {
+                return 0;
+            }
+            int bound = _best <= alpha0 ? TranspositionTable.UPPER
+                : _best >= _beta ? TranspositionTable.LOWER
+                : TranspositionTable.EXACT;
+            _table.store(key, _bestMove, _best, _depth, bound);
+            return _best;
+        }
+
+        /**
+         * My parent, or null if I am the root.
+         */
+        private final Node _parent;
+        /**
+         * My position.  Children searched on my thread use it too, and
+         * restore it afterwards.
+         */
+        private final Board _board;
+        /**
+         * Remaining depth.
+         */
+        private final int _depth;
+        /**
+         * My current window, narrowed as children report.
+         */
+        private volatile int _alpha, _beta;
+        /**
+         * Best value and packed move so far.  Guarded by record.
+         */
+        private int _best, _bestMove;
+        /**
+         * True once my window has closed, so my remaining children need
+         * not be searched.
+         */
+        private volatile boolean _cutoff;
+    }
+
+    /**
+     * The spear throws after one half-move from a node: the unit of
+     * work handed to other threads.
+     */
+    @SuppressWarnings("serial")
+    private final class Brothers extends RecursiveAction {
+
+        /**
+         * The moves completing half-move HALFMOVE from NODE, trying
+         * FIRST (if not 0) first.  ELDEST iff these are the first of
+         * NODE's moves to be searched.
+         */
+        Brothers(Node node, int halfMove, int first, boolean eldest) {
+            _node = node;
+            _halfMove = halfMove;
+            _first = first;
+            _eldest = eldest;
+        }
+
+        @Override
+        protected void compute() {
+            if (!_node.finished()) {
+                searchOn(new Board(_node._board));
+            }
+        }
+
+        /**
+         * Search my moves, each from BOARD, which is in my node's
+         * position and is restored to it afterwards.  All but the first
+         * move of the node are searched first with a null window.
+         */
+        void searchOn(Board board) {
+            int[] moves = new int[Board.MAX_SPEARS];
+            int numMoves = board.generateSpears(_halfMove, moves);
+            Searcher.toFront(moves, numMoves, _first);
+            for (int i = 0; i < numMoves && !_node.finished(); i += 1) {
+                board.makeMove(moves[i]);
+                int alpha = _node._alpha, beta = _node._beta, value;
+                if (_eldest && i == 0) {
+                    value = -child(board, -beta, -alpha).search();
+                } else {
+                    value = -child(board, -alpha - 1, -alpha).search();
+                    if (value > alpha && value < beta) {
+                        value = -child(board, -beta, -alpha).search();
+                    }
+                }
+                board.undo();
+                if (!_node.finished()) {
+                    _node.record(moves[i], value);
+                }
+            }
+        }
+
+        /**
+         * Return a child of my node, whose position is BOARD, to be
+         * searched with window ALPHA..BETA.
+         */
+        private Node child(Board board, int alpha, int beta) {
+            return new Node(_node, board, _node._depth - 1, alpha, beta);
+        }
+
+        /**
+         * The node whose children I search.
+         */
+        private final Node _node;
+        /**
+         * The half-move, and the move to try first (or 0).
+         */
+        private final int _halfMove, _first;
+        /**
+         * True iff my first move is my node's first, and so is searched
+         * with the full window.
+         */
+        private final boolean _eldest;
+    }
+
+    /**
+     * Nodes other than the root with less remaining depth than this are
+     * searched serially.  Every half-move has dozens of spear throws, so
+     * even a node of depth 2 is thousands of nodes of work.
+     */
+    private static final int MIN_SPLIT_DEPTH = 2;
+
+    /**
+     * The threads that search.
+     */
+    private final ForkJoinPool _pool;
+    /**
+     * Cached search results, shared by all threads.
+     */
+    private final TranspositionTable _table;
+    /**
+     * Decides when to abandon a search.
+     */
+    private final TimeManager _clock;
+    /**
+     * Each thread's Searcher for unsplit nodes.
+     */
+    private final ThreadLocal<Searcher> _searchers;
+    /**
+     * Every Searcher in _searchers, for collecting their counts.
+     */
+    private final List<Searcher> _allSearchers = new ArrayList<>();
+    /**
+     * True iff the last search was abandoned.
+     */
+    private boolean _aborted;
+    /**
+     * The packed best move of the last search that finished, or 0.
+     */
+    private int _bestMove;
+    /**
+     * Board.hash() of the last position searched.
+     */
+    private long _rootKey;
+    /**
+     * Board.numMoves() of the last position searched, or -1 if none.
+     */
+    private int _rootMoves = -1;
+}